@@ -0,0 +1,211 @@
+package com.yurivolkov.mediatimelinesorter;
+/*
+ * Copyright (c) 2017 yvolk (Yuri Volkov), http://yurivolkov.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/** Synthetic, but realistic data for benchmarks */
+class BenchmarkData {
+    private static final String[] KEYS = {"yv", "es", "pa", "yp", "yc", "s", "abc"};
+    private static final String[] CAMERA_NAMES = {"DSC-%04d", "IMG_%04d", "P%07d", "MOV-%04d"};
+    private static final long START_TIME = 1595095645000L;
+
+    private BenchmarkData() {
+        // Empty
+    }
+
+    /** Names as they are before and after the sorter, with and without times in them */
+    @NotNull
+    static String[] names(int count, long seed) {
+        Random random = new Random(seed);
+        String[] names = new String[count];
+        for (int ind = 0; ind < count; ind++) {
+            String key = KEYS[random.nextInt(KEYS.length)];
+            String extension = random.nextInt(4) == 0 ? "mp4" : "jpg";
+            String original;
+            switch (random.nextInt(4)) {
+                case 0:
+                    original = String.format(CAMERA_NAMES[random.nextInt(CAMERA_NAMES.length)],
+                            random.nextInt(10000));
+                    break;
+                case 1:
+                    original = String.format("%s_%tY%<tm%<td_%<tH%<tM%<tS%<tL", extension.equals("mp4") ? "VID" : "IMG",
+                            START_TIME + random.nextInt(Integer.MAX_VALUE));
+                    break;
+                default:
+                    original = "";
+                    break;
+            }
+            String name = String.format("%s%04d%s.%s", key, random.nextInt(10000),
+                    original.isEmpty() ? "" : "-" + original, extension);
+            names[ind] = random.nextBoolean() ? String.format("%05d-%s", ind + 1, name) : name;
+        }
+        return names;
+    }
+
+    /**
+     * Timelines of files in memory, so the file system is not touched.
+     * Times of files, which don't have firm time, are shifted randomly.
+     * @param firmShare share of files with firm time (jpg) among other files (mp4)
+     */
+    @NotNull
+    static List<MediaFile> timelines(int count, int timelinesCount, double firmShare, long seed) {
+        Random random = new Random(seed);
+        Path dir = Paths.get("benchmark");
+        List<MediaFile> files = new ArrayList<>(count);
+        long[] times = new long[timelinesCount];
+        for (int ind = 0; ind < timelinesCount; ind++) {
+            times[ind] = START_TIME + random.nextInt(3600) * 1000L;
+        }
+        for (int ind = 0; ind < count; ind++) {
+            int timeline = ind % timelinesCount;
+            times[timeline] += 1000 + random.nextInt(60000);
+            boolean firm = random.nextDouble() < firmShare;
+            long time = firm ? times[timeline] : times[timeline] + (random.nextInt(600) - 300) * 1000L;
+            String name = String.format("%s%06d.%s", KEYS[timeline % KEYS.length] +
+                    (timeline < KEYS.length ? "" : "x" + timeline), ind / timelinesCount + 1, firm ? "jpg" : "mp4");
+            files.add(new MediaFile(dir.resolve(name), new Attributes(time, 1000 + ind)));
+        }
+        return files;
+    }
+
+    /** Undoes changes of the sorter in memory */
+    static void reset(@NotNull List<MediaFile> files) {
+        for (MediaFile file : files) {
+            file.setFileTime(file.fileTimeInitial);
+            file.setFileName(file.name.name);
+        }
+    }
+
+    /** Creates empty files of {@link #timelines(int, int, double, long)} in the directory */
+    static void createFiles(@NotNull Path dir, @NotNull List<MediaFile> files) throws IOException {
+        Files.createDirectories(dir);
+        for (MediaFile file : files) {
+            Path path = dir.resolve(file.name.name);
+            Files.createFile(path);
+            Files.setLastModifiedTime(path, FileTime.fromMillis(file.fileTimeInitial));
+        }
+    }
+
+    static void deleteRecursively(@NotNull Path dir) throws IOException {
+        if (!Files.exists(dir)) return;
+        List<Path> paths;
+        try (Stream<Path> stream = Files.walk(dir)) {
+            paths = stream.sorted(Comparator.reverseOrder()).collect(Collectors.toList());
+        }
+        for (Path path : paths) {
+            Files.delete(path);
+        }
+    }
+
+    /** tmpfs, if available, so benchmarks measure the sorter rather than the disk */
+    @NotNull
+    static Path tempRoot() {
+        String dir = System.getProperty("benchmark.dir");
+        if (dir != null) return Paths.get(dir);
+        Path shm = Paths.get("/dev/shm");
+        return Files.isDirectory(shm) ? shm : Paths.get(System.getProperty("java.io.tmpdir"));
+    }
+
+    /** Only the summary is logged, and it is discarded to measure the work itself */
+    @NotNull
+    static PrintStream quiet() {
+        Log.setLevel(Log.Level.SUMMARY);
+        PrintStream original = System.out;
+        System.setOut(new PrintStream(new OutputStream() {
+            @Override
+            public void write(int b) {
+                // Discard
+            }
+
+            @Override
+            public void write(@NotNull byte[] b, int off, int len) {
+                // Discard
+            }
+        }));
+        return original;
+    }
+
+    private static class Attributes implements BasicFileAttributes {
+        private final FileTime time;
+        private final long size;
+
+        Attributes(long time, long size) {
+            this.time = FileTime.fromMillis(time);
+            this.size = size;
+        }
+
+        @Override
+        public FileTime lastModifiedTime() {
+            return time;
+        }
+
+        @Override
+        public FileTime lastAccessTime() {
+            return time;
+        }
+
+        @Override
+        public FileTime creationTime() {
+            return time;
+        }
+
+        @Override
+        public boolean isRegularFile() {
+            return true;
+        }
+
+        @Override
+        public boolean isDirectory() {
+            return false;
+        }
+
+        @Override
+        public boolean isSymbolicLink() {
+            return false;
+        }
+
+        @Override
+        public boolean isOther() {
+            return false;
+        }
+
+        @Override
+        public long size() {
+            return size;
+        }
+
+        @Override
+        public Object fileKey() {
+            return null;
+        }
+    }
+}
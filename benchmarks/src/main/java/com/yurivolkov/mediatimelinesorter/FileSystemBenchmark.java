@@ -0,0 +1,102 @@
+package com.yurivolkov.mediatimelinesorter;
+/*
+ * Copyright (c) 2017 yvolk (Yuri Volkov), http://yurivolkov.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link Sorter#getFiles()} and {@link Sorter#saveChanges(List)} on a directory of empty files,
+ * on tmpfs if available (see {@link BenchmarkData#tempRoot()}).
+ * Each invocation takes long, so single invocations are measured.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class FileSystemBenchmark {
+    /** Use "-p fileCount=1000000" for the archive scale */
+    @Param({"10000", "100000"})
+    public int fileCount;
+    @Param({"8"})
+    public int timelineCount;
+    @Param({"4"})
+    public int parallelism;
+
+    private Path dir;
+    private Sorter sorter;
+    private List<MediaFile> sortedFiles;
+    private PrintStream out;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        out = BenchmarkData.quiet();
+        dir = Files.createTempDirectory(BenchmarkData.tempRoot(), "media-timeline-sorter-benchmark");
+        BenchmarkData.createFiles(dir, BenchmarkData.timelines(fileCount, timelineCount, 0.5, 1));
+        sorter = new Sorter(Collections.singletonList(dir), false, parallelism);
+    }
+
+    /** Files are renamed back, so each invocation of {@link #saveChanges()} renames all of them */
+    @Setup(Level.Invocation)
+    public void prepareChanges() throws IOException {
+        for (MediaFile file : sorter.getFiles()) {
+            if (file.name.globalOrder > 0) {
+                Files.move(file.path, file.path.resolveSibling(file.name.getPermanentNamePart()));
+            }
+        }
+        sortedFiles = sorter.getFiles();
+        sorter.fixFileTime(sortedFiles);
+        sorter.sort(sortedFiles);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        BenchmarkData.deleteRecursively(dir);
+        System.setOut(out);
+    }
+
+    @Benchmark
+    public List<MediaFile> getFiles() {
+        return sorter.getFiles();
+    }
+
+    @Benchmark
+    public List<MediaFile> saveChanges() {
+        sorter.saveChanges(sortedFiles);
+        return sortedFiles;
+    }
+}
@@ -0,0 +1,56 @@
+package com.yurivolkov.mediatimelinesorter;
+/*
+ * Copyright (c) 2017 yvolk (Yuri Volkov), http://yurivolkov.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/** {@link ParsedName#parse(String)} of a corpus of typical names */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ParsedNameBenchmark {
+    private static final int CORPUS_SIZE = 4096;
+    private String[] names;
+    private int index = 0;
+
+    @Setup
+    public void setUp() {
+        names = BenchmarkData.names(CORPUS_SIZE, 1);
+    }
+
+    @Benchmark
+    public void parse(Blackhole blackhole) {
+        index = (index + 1) & (CORPUS_SIZE - 1);
+        ParsedName name = ParsedName.parse(names[index]);
+        blackhole.consume(name.parsedTime);
+        blackhole.consume(name.sourceOrder);
+    }
+}
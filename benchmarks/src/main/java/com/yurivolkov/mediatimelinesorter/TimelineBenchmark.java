@@ -0,0 +1,91 @@
+package com.yurivolkov.mediatimelinesorter;
+/*
+ * Copyright (c) 2017 yvolk (Yuri Volkov), http://yurivolkov.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.PrintStream;
+import java.nio.file.Paths;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/** {@link Sorter#fixFileTime(List)} and {@link Sorter#sort(List)} of files in memory */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TimelineBenchmark {
+    @Param({"100000"})
+    public int fileCount;
+    @Param({"8"})
+    public int timelineCount;
+    /** Share of files with firm time */
+    @Param({"0.1", "0.5", "0.9"})
+    public double firmShare;
+    @Param({"1"})
+    public int parallelism;
+
+    private Sorter sorter;
+    private List<MediaFile> files;
+    private PrintStream out;
+    private final Random random = new Random(1);
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        out = BenchmarkData.quiet();
+        sorter = new Sorter(Collections.singletonList(Paths.get("benchmark")), false, parallelism);
+        files = BenchmarkData.timelines(fileCount, timelineCount, firmShare, 1);
+    }
+
+    @Setup(Level.Invocation)
+    public void resetFiles() {
+        BenchmarkData.reset(files);
+        Collections.shuffle(files, random);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        System.setOut(out);
+    }
+
+    @Benchmark
+    public List<MediaFile> fixFileTime() {
+        sorter.fixFileTime(files);
+        return files;
+    }
+
+    @Benchmark
+    public List<MediaFile> sort() {
+        sorter.sort(files);
+        return files;
+    }
+}
@@ -0,0 +1,134 @@
+package com.yurivolkov.mediatimelinesorter;
+/*
+ * Copyright (c) 2017 yvolk (Yuri Volkov), http://yurivolkov.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * All changes of a run in a compact binary file, so they may be computed in one place and applied in another.
+ * Directories are stored relative to the root directories, so the plan may be applied
+ * to the same roots, mounted at other paths.
+ */
+public class ChangePlan {
+    private static final int MAGIC = 0x4D545350;
+    private static final int VERSION = 1;
+
+    private ChangePlan() {
+        // Empty
+    }
+
+    public static void write(@NotNull Path path, @NotNull List<Path> roots, @NotNull List<FileChange> changes)
+            throws IOException {
+        List<Path> absoluteRoots = toAbsolute(roots);
+        Map<Path, Integer> dirIds = new HashMap<>();
+        List<Path> dirs = new ArrayList<>();
+        for (FileChange change : changes) {
+            Path dir = change.source.toAbsolutePath().normalize().getParent();
+            if (!dirIds.containsKey(dir)) {
+                dirIds.put(dir, dirs.size());
+                dirs.add(dir);
+            }
+        }
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(path)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(absoluteRoots.size());
+            out.writeInt(dirs.size());
+            for (Path dir : dirs) {
+                int rootIndex = rootIndex(absoluteRoots, dir);
+                out.writeInt(rootIndex);
+                out.writeUTF(toPortable(absoluteRoots.get(rootIndex).relativize(dir)));
+            }
+            out.writeInt(changes.size());
+            for (FileChange change : changes) {
+                out.writeInt(dirIds.get(change.source.toAbsolutePath().normalize().getParent()));
+                out.writeUTF(change.source.getFileName().toString());
+                out.writeUTF(change.nameChanged() ? change.fileName : "");
+                out.writeLong(change.fileTimeInitial);
+                out.writeLong(change.fileTime);
+            }
+        }
+    }
+
+    /** @param roots the same number of roots in the same order as when the plan was written */
+    @NotNull
+    public static List<FileChange> read(@NotNull Path path, @NotNull List<Path> roots) throws IOException {
+        List<FileChange> changes = new ArrayList<>();
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                throw new IOException("Unknown format of the plan: " + path);
+            }
+            int rootsCount = in.readInt();
+            if (rootsCount != roots.size()) {
+                throw new IOException("The plan is for " + rootsCount + " root directories, but " +
+                        roots.size() + " were given");
+            }
+            List<Path> dirs = new ArrayList<>();
+            int dirsCount = in.readInt();
+            for (int ind = 0; ind < dirsCount; ind++) {
+                Path root = roots.get(in.readInt());
+                String relative = in.readUTF();
+                dirs.add(relative.isEmpty() ? root : root.resolve(relative));
+            }
+            int changesCount = in.readInt();
+            for (int ind = 0; ind < changesCount; ind++) {
+                Path dir = dirs.get(in.readInt());
+                String name = in.readUTF();
+                String newName = in.readUTF();
+                changes.add(new FileChange(dir.resolve(name), newName.isEmpty() ? name : newName,
+                        in.readLong(), in.readLong()));
+            }
+        }
+        return changes;
+    }
+
+    private static List<Path> toAbsolute(List<Path> paths) {
+        List<Path> absolute = new ArrayList<>();
+        for (Path path : paths) {
+            absolute.add(path.toAbsolutePath().normalize());
+        }
+        return absolute;
+    }
+
+    private static int rootIndex(List<Path> roots, Path dir) {
+        for (int ind = 0; ind < roots.size(); ind++) {
+            if (dir.startsWith(roots.get(ind))) return ind;
+        }
+        throw new IllegalArgumentException("Directory is not under the roots: " + dir);
+    }
+
+    /** "/" separates names, so a plan, written on one OS, may be applied on another */
+    private static String toPortable(Path relative) {
+        StringBuilder builder = new StringBuilder();
+        for (Path name : relative) {
+            if (builder.length() > 0) builder.append('/');
+            builder.append(name.toString());
+        }
+        return builder.toString();
+    }
+}
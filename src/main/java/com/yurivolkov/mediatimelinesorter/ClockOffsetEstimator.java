@@ -0,0 +1,203 @@
+package com.yurivolkov.mediatimelinesorter;
+/*
+ * Copyright (c) 2017 yvolk (Yuri Volkov), http://yurivolkov.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.LongConsumer;
+import java.util.stream.Collectors;
+
+/**
+ * Estimates offsets of device clocks: bursts of firm times of each timeline are aligned with bursts
+ * of the reference timeline, e.g. when two cameras shot the same scene. The reference timeline
+ * is the one with the most firm files, unless specified.
+ * <ol>
+ * <li>Starts of bursts, separated by gaps of {@link #BURST_GAP_MILLIS}, are found in sorted firm times</li>
+ * <li>Differences between burst starts of the timeline and of the reference within {@link #MAX_OFFSET_MILLIS}
+ * are counted in a histogram with bins of {@link #TOLERANCE_MILLIS}, the densest pair of bins wins</li>
+ * <li>The offset is refined to the median difference of firm times to their nearest reference times</li>
+ * </ol>
+ * Each step is a sort, a linear pass or a binary search per time, so the estimation takes O(N log N)
+ */
+public class ClockOffsetEstimator {
+    static final long BURST_GAP_MILLIS = 5 * 60 * 1000L;
+    /** Time zones differ by up to 26 hours */
+    static final long MAX_OFFSET_MILLIS = 26 * 3600 * 1000L;
+    static final long TOLERANCE_MILLIS = 60 * 1000L;
+    static final int MIN_MATCHED_BURSTS = 3;
+
+    /** Propose offsets only or also shift times of files before fixing them */
+    public enum Mode {
+        PROPOSE,
+        APPLY
+    }
+
+    /** Milliseconds to add to times of a timeline to align it with the reference timeline */
+    public static class Offset {
+        public final String sourceKey;
+        public final long millis;
+        public final int matchedBursts;
+        public final int matchedFiles;
+        public final int firmFiles;
+
+        Offset(String sourceKey, long millis, int matchedBursts, int matchedFiles, int firmFiles) {
+            this.sourceKey = sourceKey;
+            this.millis = millis;
+            this.matchedBursts = matchedBursts;
+            this.matchedFiles = matchedFiles;
+            this.firmFiles = firmFiles;
+        }
+
+        @Override
+        public String toString() {
+            return "Timeline '" + sourceKey + "': " + (millis < 0 ? "-" : "+") + Math.abs(millis) / 1000 + " s" +
+                    ", matched bursts: " + matchedBursts + ", files: " + matchedFiles + " of " + firmFiles;
+        }
+    }
+
+    @Nullable
+    private final String referenceKey;
+
+    public ClockOffsetEstimator(@Nullable String referenceKey) {
+        this.referenceKey = referenceKey;
+    }
+
+    /**
+     * @param firmTimes firm times of files of each timeline, in any order
+     * @return non-zero offsets of the timelines, which match the reference timeline
+     */
+    @NotNull
+    public List<Offset> estimate(@NotNull Map<String, long[]> firmTimes) {
+        Map<String, long[]> sorted = new HashMap<>();
+        firmTimes.forEach((key, times) -> {
+            long[] copy = times.clone();
+            Arrays.sort(copy);
+            sorted.put(key, copy);
+        });
+        String reference = referenceKey != null ? referenceKey : sorted.entrySet().stream()
+                .max((o1, o2) -> o1.getValue().length != o2.getValue().length
+                        ? Integer.compare(o1.getValue().length, o2.getValue().length)
+                        : o2.getKey().compareTo(o1.getKey()))
+                .map(Map.Entry::getKey).orElse(null);
+        long[] referenceTimes = sorted.get(reference);
+        if (referenceTimes == null || referenceTimes.length == 0) {
+            Log.summary("No reference timeline to estimate clock offsets");
+            return new ArrayList<>();
+        }
+        Log.summary("Estimating clock offsets against the timeline '" + reference + "'");
+        long[] referenceBursts = burstStarts(referenceTimes);
+        return sorted.entrySet().parallelStream()
+                .filter(entry -> !entry.getKey().equals(reference))
+                .map(entry -> estimate(entry.getKey(), entry.getValue(), referenceTimes, referenceBursts))
+                .filter(Objects::nonNull)
+                .sorted((o1, o2) -> o1.sourceKey.compareTo(o2.sourceKey))
+                .collect(Collectors.toList());
+    }
+
+    @Nullable
+    private static Offset estimate(String sourceKey, long[] times, long[] referenceTimes, long[] referenceBursts) {
+        long[] bursts = burstStarts(times);
+        Map<Long, Integer> histogram = new HashMap<>();
+        forEachBurstDifference(bursts, referenceBursts, MAX_OFFSET_MILLIS, 0,
+                difference -> histogram.merge(Math.floorDiv(difference, TOLERANCE_MILLIS), 1, Integer::sum));
+        long bestBin = 0;
+        int bestCount = 0;
+        for (Map.Entry<Long, Integer> entry : histogram.entrySet()) {
+            long bin = entry.getKey();
+            int count = entry.getValue() + histogram.getOrDefault(bin + 1, 0);
+            if (count > bestCount || count == bestCount && Math.abs(bin) < Math.abs(bestBin)) {
+                bestBin = bin;
+                bestCount = count;
+            }
+        }
+        if (bestCount < MIN_MATCHED_BURSTS) {
+            Log.trace(() -> "Timeline '" + sourceKey + "' doesn't match the reference timeline");
+            return null;
+        }
+
+        // Median of burst differences in the densest bins, limited as in the histogram
+        long[] burstDifferences = new long[bestCount];
+        int[] count = {0};
+        forEachBurstDifference(bursts, referenceBursts, TOLERANCE_MILLIS, (bestBin + 1) * TOLERANCE_MILLIS,
+                difference -> {
+                    if (difference >= -MAX_OFFSET_MILLIS && difference < MAX_OFFSET_MILLIS) {
+                        burstDifferences[count[0]++] = difference;
+                    }
+                });
+        Arrays.sort(burstDifferences, 0, count[0]);
+        long approximate = burstDifferences[count[0] / 2];
+        long[] differences = new long[times.length];
+        int matchedFiles = 0;
+        for (long time : times) {
+            long nearest = nearest(referenceTimes, time + approximate);
+            if (Math.abs(nearest - time - approximate) <= TOLERANCE_MILLIS) {
+                differences[matchedFiles++] = nearest - time;
+            }
+        }
+        if (matchedFiles == 0) return null;
+
+        Arrays.sort(differences, 0, matchedFiles);
+        long millis = Math.round(differences[matchedFiles / 2] / 1000.0) * 1000;
+        return millis == 0 ? null : new Offset(sourceKey, millis, bestCount, matchedFiles, times.length);
+    }
+
+    /** Differences of reference bursts, which are within the range around the center, and of the bursts */
+    private static void forEachBurstDifference(long[] bursts, long[] referenceBursts, long range, long center,
+                                               LongConsumer consumer) {
+        for (long burst : bursts) {
+            int from = lowerBound(referenceBursts, burst + center - range);
+            for (int ind = from; ind < referenceBursts.length && referenceBursts[ind] < burst + center + range;
+                 ind++) {
+                consumer.accept(referenceBursts[ind] - burst);
+            }
+        }
+    }
+
+    static long[] burstStarts(long[] sortedTimes) {
+        long[] starts = new long[sortedTimes.length];
+        int count = 0;
+        for (int ind = 0; ind < sortedTimes.length; ind++) {
+            if (ind == 0 || sortedTimes[ind] - sortedTimes[ind - 1] > BURST_GAP_MILLIS) {
+                starts[count++] = sortedTimes[ind];
+            }
+        }
+        return Arrays.copyOf(starts, count);
+    }
+
+    /** @return index of the first value, which is not less than the key */
+    private static int lowerBound(long[] values, long key) {
+        int ind = Arrays.binarySearch(values, key);
+        if (ind < 0) return -ind - 1;
+        while (ind > 0 && values[ind - 1] == key) {
+            ind--;
+        }
+        return ind;
+    }
+
+    private static long nearest(long[] values, long key) {
+        int ind = lowerBound(values, key);
+        if (ind == values.length) return values[ind - 1];
+        if (ind == 0) return values[0];
+        return key - values[ind - 1] <= values[ind] - key ? values[ind - 1] : values[ind];
+    }
+}
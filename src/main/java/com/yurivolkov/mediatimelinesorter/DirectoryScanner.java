@@ -0,0 +1,209 @@
+package com.yurivolkov.mediatimelinesorter;
+/*
+ * Copyright (c) 2017 yvolk (Yuri Volkov), http://yurivolkov.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.nio.file.DirectoryIteratorException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.BiFunction;
+
+/**
+ * Finds media files in several root directories (optionally including their subdirectories)
+ * using work-stealing {@link RecursiveTask}s, so it should be invoked in a {@link java.util.concurrent.ForkJoinPool}.
+ * Attributes of each entry are read once.
+ * Files of a directory go in the order of their paths, followed by files of its subdirectories,
+ * so the result doesn't depend on the number of threads.
+ */
+public class DirectoryScanner {
+    /** Number of directory entries, which attributes are read by one task */
+    private static final int ENTRIES_PER_TASK = 256;
+    private final boolean recursive;
+    @NotNull
+    private final Metrics metrics;
+
+    public DirectoryScanner(boolean recursive) {
+        this(recursive, new Metrics());
+    }
+
+    public DirectoryScanner(boolean recursive, @NotNull Metrics metrics) {
+        this.recursive = recursive;
+        this.metrics = metrics;
+    }
+
+    public List<MediaFile> scan(@NotNull List<Path> roots) {
+        List<MediaFile> files = new ArrayList<>();
+        for (Directory<MediaFile> directory : scanDirectories(roots, MediaFile::new)) {
+            files.addAll(directory.files);
+        }
+        return files;
+    }
+
+    /** Files of one directory, created by a factory, see {@link #scanDirectories(List, BiFunction)} */
+    static class Directory<T> {
+        final Path dir;
+        final List<T> files;
+
+        Directory(Path dir, List<T> files) {
+            this.dir = dir;
+            this.files = files;
+        }
+    }
+
+    /**
+     * The same scan, but each file is created by the factory, e.g. as a compact row instead of a {@link MediaFile},
+     * and files are grouped by directories
+     */
+    <T> List<Directory<T>> scanDirectories(@NotNull List<Path> roots,
+                                           @NotNull BiFunction<Path, BasicFileAttributes, T> factory) {
+        List<DirectoryTask<T>> tasks = new ArrayList<>();
+        for (Path root : roots) {
+            tasks.add(new DirectoryTask<>(root, factory));
+        }
+        ForkJoinTask.invokeAll(tasks);
+        return joinAll(tasks);
+    }
+
+    private static <T> List<Directory<T>> joinAll(List<DirectoryTask<T>> tasks) {
+        List<Directory<T>> directories = new ArrayList<>();
+        for (DirectoryTask<T> task : tasks) {
+            directories.addAll(task.join());
+        }
+        return directories;
+    }
+
+    private class DirectoryTask<T> extends RecursiveTask<List<Directory<T>>> {
+        private static final long serialVersionUID = 1L;
+
+        private final Path dir;
+        private final BiFunction<Path, BasicFileAttributes, T> factory;
+
+        DirectoryTask(Path dir, BiFunction<Path, BasicFileAttributes, T> factory) {
+            this.dir = dir;
+            this.factory = factory;
+        }
+
+        @Override
+        protected List<Directory<T>> compute() {
+            List<Path> paths = listDir(dir);
+            List<EntriesTask<T>> entriesTasks = new ArrayList<>();
+            for (int from = 0; from < paths.size(); from += ENTRIES_PER_TASK) {
+                entriesTasks.add(new EntriesTask<>(paths.subList(from, Math.min(from + ENTRIES_PER_TASK, paths.size())),
+                        factory));
+            }
+            List<T> files = new ArrayList<>();
+            List<DirectoryTask<T>> subdirTasks = new ArrayList<>();
+            ForkJoinTask.invokeAll(entriesTasks);
+            for (EntriesTask<T> task : entriesTasks) {
+                Entries<T> entries = task.join();
+                files.addAll(entries.files);
+                for (Path subdir : entries.dirs) {
+                    subdirTasks.add(new DirectoryTask<>(subdir, factory));
+                }
+            }
+            ForkJoinTask.invokeAll(subdirTasks);
+            List<Directory<T>> directories = new ArrayList<>();
+            directories.add(new Directory<>(dir, files));
+            directories.addAll(joinAll(subdirTasks));
+            return directories;
+        }
+    }
+
+    /** @return paths of the directory entries, sorted */
+    static List<Path> listDir(Path dir) {
+        List<Path> paths = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir)) {
+            for (Path path: stream) {
+                paths.add(path);
+            }
+        } catch (IOException | DirectoryIteratorException x) {
+            // IOException can never be thrown by the iteration.
+            // In this snippet, it can only be thrown by newDirectoryStream.
+            Log.error(x.toString());
+        }
+        Collections.sort(paths);
+        return paths;
+    }
+
+    /**
+     * Attributes of a regular file (also via a symbolic link) or of a directory.
+     * We don't descend into linked directories to avoid loops
+     * @return null if the path should be skipped
+     */
+    @Nullable
+    static BasicFileAttributes readAttributes(Path path, @NotNull Metrics metrics) {
+        try {
+            metrics.add(Metrics.STAT_CALLS, 1);
+            BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class,
+                    LinkOption.NOFOLLOW_LINKS);
+            if (attributes.isSymbolicLink()) {
+                metrics.add(Metrics.STAT_CALLS, 1);
+                attributes = Files.readAttributes(path, BasicFileAttributes.class);
+                return attributes.isRegularFile() ? attributes : null;
+            }
+            return attributes;
+        } catch (IOException | SecurityException e) {
+            Log.error("Failed to read attributes of " + path + ", error: " + e);
+            return null;
+        }
+    }
+
+    private static class Entries<T> {
+        final List<T> files = new ArrayList<>();
+        final List<Path> dirs = new ArrayList<>();
+    }
+
+    private class EntriesTask<T> extends RecursiveTask<Entries<T>> {
+        private static final long serialVersionUID = 1L;
+
+        private final List<Path> paths;
+        private final BiFunction<Path, BasicFileAttributes, T> factory;
+
+        EntriesTask(List<Path> paths, BiFunction<Path, BasicFileAttributes, T> factory) {
+            this.paths = paths;
+            this.factory = factory;
+        }
+
+        @Override
+        protected Entries<T> compute() {
+            Entries<T> entries = new Entries<>();
+            for (Path path : paths) {
+                BasicFileAttributes attributes = readAttributes(path, metrics);
+                if (attributes == null) continue;
+
+                if (attributes.isRegularFile()) {
+                    if (Sorter.isServiceFile(path.getFileName().toString())) continue;
+
+                    entries.files.add(factory.apply(path, attributes));
+                } else if (attributes.isDirectory() && recursive) {
+                    entries.dirs.add(path);
+                }
+            }
+            return entries;
+        }
+    }
+}
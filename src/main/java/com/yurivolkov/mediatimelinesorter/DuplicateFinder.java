@@ -0,0 +1,152 @@
+package com.yurivolkov.mediatimelinesorter;
+/*
+ * Copyright (c) 2017 yvolk (Yuri Volkov), http://yurivolkov.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * Finds files with the same contents, e.g. the same shot, received from its owner and forwarded by somebody else.
+ * Only the bytes needed to tell candidates apart are read:
+ * <ol>
+ * <li>Files are grouped by size, known from the scan</li>
+ * <li>Files of the same size are grouped by a hash of their head and tail, {@link #SAMPLE_BYTES} each</li>
+ * <li>Larger files with the same sample are grouped by a hash of their whole contents</li>
+ * </ol>
+ * Files are hashed in parallel, when invoked in a {@link java.util.concurrent.ForkJoinPool},
+ * through a large direct buffer of each thread
+ */
+public class DuplicateFinder {
+    static final int SAMPLE_BYTES = 64 * 1024;
+    private static final int BUFFER_BYTES = 1024 * 1024;
+    private static final ThreadLocal<ByteBuffer> buffers =
+            ThreadLocal.withInitial(() -> ByteBuffer.allocateDirect(BUFFER_BYTES));
+
+    /** Report duplicates only or also exclude them from numbering */
+    public enum Mode {
+        REPORT,
+        EXCLUDE
+    }
+
+    @NotNull
+    private final Metrics metrics;
+
+    public DuplicateFinder(@NotNull Metrics metrics) {
+        this.metrics = metrics;
+    }
+
+    /** @return groups of files with the same contents, files of each group are in the order of the list */
+    @NotNull
+    public List<List<MediaFile>> find(@NotNull List<MediaFile> files) {
+        List<List<MediaFile>> bySize = split(files.stream()
+                .filter(file -> file.getSize() > 0)
+                .collect(Collectors.groupingBy(MediaFile::getSize, LinkedHashMap::new, Collectors.toList()))
+                .values());
+        List<List<MediaFile>> bySample = split(bySize, file -> hash(file, true));
+        List<List<MediaFile>> duplicates = new ArrayList<>();
+        List<List<MediaFile>> toHashFully = new ArrayList<>();
+        for (List<MediaFile> group : bySample) {
+            (group.get(0).getSize() > 2 * SAMPLE_BYTES ? toHashFully : duplicates).add(group);
+        }
+        duplicates.addAll(split(toHashFully, file -> hash(file, false)));
+        return duplicates;
+    }
+
+    /** @return groups of two files or more */
+    private static List<List<MediaFile>> split(Iterable<List<MediaFile>> groups) {
+        List<List<MediaFile>> result = new ArrayList<>();
+        for (List<MediaFile> group : groups) {
+            if (group.size() > 1) {
+                result.add(group);
+            }
+        }
+        return result;
+    }
+
+    /** Splits each group by hashes of its files. Files, which couldn't be read, are dropped */
+    private static List<List<MediaFile>> split(List<List<MediaFile>> groups, Function<MediaFile, ByteBuffer> hasher) {
+        List<MediaFile> files = groups.stream().flatMap(List::stream).collect(Collectors.toList());
+        ByteBuffer[] hashes = new ByteBuffer[files.size()];
+        IntStream.range(0, files.size()).parallel().forEach(ind -> hashes[ind] = hasher.apply(files.get(ind)));
+
+        List<List<MediaFile>> result = new ArrayList<>();
+        int ind = 0;
+        for (List<MediaFile> group : groups) {
+            Map<ByteBuffer, List<MediaFile>> byHash = new LinkedHashMap<>();
+            for (MediaFile file : group) {
+                ByteBuffer hash = hashes[ind++];
+                if (hash != null) {
+                    byHash.computeIfAbsent(hash, key -> new ArrayList<>()).add(file);
+                }
+            }
+            result.addAll(split(byHash.values()));
+        }
+        return result;
+    }
+
+    /** @return SHA-256 of the head and tail sample or of the whole file, null if failed to read it */
+    @Nullable
+    private ByteBuffer hash(MediaFile file, boolean sample) {
+        try (FileChannel channel = FileChannel.open(file.path, StandardOpenOption.READ)) {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            long size = channel.size();
+            long bytesRead;
+            if (sample && size > 2 * SAMPLE_BYTES) {
+                bytesRead = update(digest, channel, 0, SAMPLE_BYTES) + update(digest, channel, size - SAMPLE_BYTES, size);
+            } else {
+                bytesRead = update(digest, channel, 0, size);
+            }
+            metrics.add(Metrics.BYTES_READ, bytesRead);
+            return ByteBuffer.wrap(digest.digest());
+        } catch (IOException e) {
+            Log.error("Failed to read " + file.path + ", error: " + e);
+            return null;
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /** Positional reads of the range into the direct buffer of the thread */
+    private static long update(MessageDigest digest, FileChannel channel, long from, long to) throws IOException {
+        ByteBuffer buffer = buffers.get();
+        long position = from;
+        while (position < to) {
+            ((Buffer) buffer).clear().limit((int) Math.min(buffer.capacity(), to - position));
+            int read = channel.read(buffer, position);
+            if (read < 0) break;
+
+            position += read;
+            ((Buffer) buffer).flip();
+            digest.update(buffer);
+        }
+        return position - from;
+    }
+}
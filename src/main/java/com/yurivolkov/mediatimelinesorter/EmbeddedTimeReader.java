@@ -0,0 +1,68 @@
+package com.yurivolkov.mediatimelinesorter;
+/*
+ * Copyright (c) 2017 yvolk (Yuri Volkov), http://yurivolkov.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import org.jetbrains.annotations.NotNull;
+
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Reads time of taking a photo or a video, embedded into the file, by a reader, suitable for the file extension
+ */
+public class EmbeddedTimeReader {
+    private final static List<String> exifExtensions = Arrays.asList("jpg", "jpeg", "raw", "tif", "tiff", "dng");
+    private final static List<String> isoMediaExtensions = Arrays.asList("mp4", "mov", "m4v", "3gp");
+    private final static List<String> transportStreamExtensions = Arrays.asList("mts", "m2ts");
+
+    static class Result {
+        static final Result EMPTY = new Result(0, 0);
+
+        /** 0 if not found */
+        final long time;
+        final long bytesRead;
+
+        Result(long time, long bytesRead) {
+            this.time = time;
+            this.bytesRead = bytesRead;
+        }
+    }
+
+    private EmbeddedTimeReader() {
+        // Empty
+    }
+
+    /** @return 0 if not found */
+    public static long read(@NotNull Path path, @NotNull String extension) {
+        return readWithStats(path, extension).time;
+    }
+
+    @NotNull
+    static Result readWithStats(@NotNull Path path, @NotNull String extension) {
+        String lowerCase = extension.toLowerCase();
+        if (exifExtensions.contains(lowerCase)) {
+            return ExifReader.read(path);
+        }
+        if (isoMediaExtensions.contains(lowerCase)) {
+            return VideoMetadataReader.readIsoMedia(path);
+        }
+        if (transportStreamExtensions.contains(lowerCase)) {
+            return VideoMetadataReader.readTransportStream(path);
+        }
+        return Result.EMPTY;
+    }
+}
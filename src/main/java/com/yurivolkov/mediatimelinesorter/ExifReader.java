@@ -0,0 +1,261 @@
+package com.yurivolkov.mediatimelinesorter;
+/*
+ * Copyright (c) 2017 yvolk (Yuri Volkov), http://yurivolkov.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.DateTimeException;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+
+/**
+ * Reads EXIF "Date Taken" (DateTimeOriginal with SubSecTimeOriginal and OffsetTimeOriginal)
+ * of JPEG and TIFF based (e.g. raw) files.
+ * Only the beginning of a file is read with positional reads: the EXIF segment is in the first 64 KB.
+ * IFDs of TIFF based files may be anywhere in the file, so they are read at their offsets.
+ */
+public class ExifReader {
+    /** Usually the whole EXIF directory is in the first chunk */
+    private static final int FIRST_READ_BYTES = 8 * 1024;
+    /** A JPEG segment cannot be longer */
+    private static final int MAX_READ_BYTES = 64 * 1024 + 4;
+
+    private static final int TAG_EXIF_IFD = 0x8769;
+    private static final int TAG_DATE_TIME_ORIGINAL = 0x9003;
+    private static final int TAG_OFFSET_TIME = 0x9010;
+    private static final int TAG_OFFSET_TIME_ORIGINAL = 0x9011;
+    private static final int TAG_SUB_SEC_TIME_ORIGINAL = 0x9291;
+    private static final int TYPE_ASCII = 2;
+
+    private final FileChannel channel;
+    /** Bytes of the file, starting from {@link #bufferStart} */
+    private ByteBuffer buffer = ByteBuffer.allocate(0);
+    private int bufferStart = 0;
+    /** Positions beyond this are not read */
+    private long maxLength = MAX_READ_BYTES;
+    /** Number of bytes read from the file */
+    private long bytesRead = 0;
+
+    private ExifReader(FileChannel channel) {
+        this.channel = channel;
+    }
+
+    /**
+     * Time without an offset is treated as a local time of the default time zone,
+     * as file time set by other tools
+     * @return 0 if not found
+     */
+    public static long readDateTimeOriginal(@NotNull Path path) {
+        return read(path).time;
+    }
+
+    static EmbeddedTimeReader.Result read(@NotNull Path path) {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            ExifReader reader = new ExifReader(channel);
+            long time = reader.readTime();
+            return new EmbeddedTimeReader.Result(time, reader.bytesRead);
+        } catch (IOException | RuntimeException e) {
+            Log.error("Failed to read EXIF of " + path + ", error: " + e);
+            return EmbeddedTimeReader.Result.EMPTY;
+        }
+    }
+
+    private long readTime() throws IOException {
+        if (!ensureRead(0, FIRST_READ_BYTES) && buffer.limit() < 4) return 0;
+
+        int b0 = byteAt(0) & 0xFF;
+        int b1 = byteAt(1) & 0xFF;
+        if (b0 == 0xFF && b1 == 0xD8) {
+            int tiffStart = findExifInJpeg();
+            return tiffStart < 0 ? 0 : readTiff(tiffStart);
+        }
+        if ((b0 == 'I' && b1 == 'I') || (b0 == 'M' && b1 == 'M')) {
+            maxLength = channel.size();
+            return readTiff(0);
+        }
+        return 0;
+    }
+
+    /** @return start of the TIFF structure inside the EXIF segment, -1 if not found */
+    private int findExifInJpeg() throws IOException {
+        buffer.order(ByteOrder.BIG_ENDIAN);
+        int ind = 2;
+        while (ensureRead(ind, 4)) {
+            if ((byteAt(ind) & 0xFF) != 0xFF) return -1;
+
+            int marker = byteAt(ind + 1) & 0xFF;
+            if (marker == 0xDA || marker == 0xD9) {
+                // Start of image data or end of image
+                return -1;
+            }
+            int length = shortAt(ind + 2);
+            if (marker == 0xE1 && ensureRead(ind + 4, 6)
+                    && "Exif\0\0".equals(ascii(ind + 4, 6))) {
+                return ind + 10;
+            }
+            ind += 2 + length;
+        }
+        return -1;
+    }
+
+    private long readTiff(int tiffStart) throws IOException {
+        if (!ensureRead(tiffStart, 8)) return 0;
+
+        buffer.order(byteAt(tiffStart) == 'I' ? ByteOrder.LITTLE_ENDIAN : ByteOrder.BIG_ENDIAN);
+        int ifd0 = tiffStart + intAt(tiffStart + 4);
+        int exifIfdOffset = findEntry(tiffStart, ifd0, TAG_EXIF_IFD);
+        if (exifIfdOffset < 0) return 0;
+
+        int exifIfd = tiffStart + intAt(exifIfdOffset + 8);
+        String dateTime = readAscii(tiffStart, findEntry(tiffStart, exifIfd, TAG_DATE_TIME_ORIGINAL));
+        if (dateTime.length() < 19) return 0;
+
+        String subSec = readAscii(tiffStart, findEntry(tiffStart, exifIfd, TAG_SUB_SEC_TIME_ORIGINAL));
+        String offset = readAscii(tiffStart, findEntry(tiffStart, exifIfd, TAG_OFFSET_TIME_ORIGINAL));
+        if (offset.isEmpty()) {
+            offset = readAscii(tiffStart, findEntry(tiffStart, exifIfd, TAG_OFFSET_TIME));
+        }
+        return toMillis(dateTime, subSec, offset);
+    }
+
+    /** @return position of the IFD entry, -1 if not found */
+    private int findEntry(int tiffStart, int ifd, int tag) throws IOException {
+        if (ifd <= tiffStart || !ensureRead(ifd, 2)) return -1;
+
+        int count = shortAt(ifd);
+        if (!ensureRead(ifd + 2, count * 12)) return -1;
+
+        for (int ind = 0; ind < count; ind++) {
+            int entry = ifd + 2 + ind * 12;
+            if (shortAt(entry) == tag) {
+                return entry;
+            }
+        }
+        return -1;
+    }
+
+    /** @return empty string if there is no such ASCII entry */
+    private String readAscii(int tiffStart, int entry) throws IOException {
+        if (entry < 0 || shortAt(entry + 2) != TYPE_ASCII) return "";
+
+        int count = intAt(entry + 4);
+        if (count <= 0 || count > 256) return "";
+
+        int valueStart = count <= 4 ? entry + 8 : tiffStart + intAt(entry + 8);
+        if (!ensureRead(valueStart, count)) return "";
+
+        String value = ascii(valueStart, count);
+        int indNull = value.indexOf('\0');
+        return (indNull < 0 ? value : value.substring(0, indNull)).trim();
+    }
+
+    private String ascii(int from, int length) {
+        byte[] bytes = new byte[length];
+        for (int ind = 0; ind < length; ind++) {
+            bytes[ind] = byteAt(from + ind);
+        }
+        return new String(bytes, StandardCharsets.US_ASCII);
+    }
+
+    private byte byteAt(int position) {
+        return buffer.get(position - bufferStart);
+    }
+
+    private int shortAt(int position) {
+        return buffer.getShort(position - bufferStart) & 0xFFFF;
+    }
+
+    private int intAt(int position) {
+        return buffer.getInt(position - bufferStart);
+    }
+
+    /**
+     * @param dateTime "yyyy:MM:dd HH:mm:ss"
+     * @param offset e.g. "+03:00", or empty. If malformed, the default time zone is used, as for empty
+     * @return 0 if failed to parse
+     */
+    static long toMillis(String dateTime, String subSec, String offset) {
+        try {
+            LocalDateTime local = LocalDateTime.of(
+                    Integer.parseInt(dateTime.substring(0, 4)),
+                    Integer.parseInt(dateTime.substring(5, 7)),
+                    Integer.parseInt(dateTime.substring(8, 10)),
+                    Integer.parseInt(dateTime.substring(11, 13)),
+                    Integer.parseInt(dateTime.substring(14, 16)),
+                    Integer.parseInt(dateTime.substring(17, 19)));
+            long millis = local.atZone(toZone(offset)).toInstant().toEpochMilli();
+            if (!subSec.isEmpty() && subSec.chars().allMatch(Character::isDigit)) {
+                millis += Integer.parseInt((subSec + "00").substring(0, 3));
+            }
+            return millis;
+        } catch (NumberFormatException | DateTimeException e) {
+            return 0;
+        }
+    }
+
+    private static ZoneId toZone(String offset) {
+        if (offset.isEmpty()) return ZoneId.systemDefault();
+
+        try {
+            return ZoneOffset.of(offset);
+        } catch (DateTimeException e) {
+            return ZoneId.systemDefault();
+        }
+    }
+
+    /**
+     * Reads the required bytes of the file, using positional reads. The buffer grows from the start of the file
+     * up to the EXIF limit, bytes beyond it are read into a separate chunk at their position
+     * @return false if the file is shorter or the bytes are beyond {@link #maxLength}
+     */
+    private boolean ensureRead(int from, int length) throws IOException {
+        long end = (long) from + length;
+        if (from < 0 || end > maxLength) return false;
+        if (from >= bufferStart && end <= bufferStart + buffer.limit()) return true;
+
+        ByteBuffer newBuffer;
+        if (end <= MAX_READ_BYTES) {
+            newBuffer = ByteBuffer.allocate(Math.min(MAX_READ_BYTES, Math.max((int) end, buffer.limit() * 2)));
+            if (bufferStart == 0) {
+                // Buffer methods, as ByteBuffer overrides of them don't exist in Java 8
+                ((Buffer) buffer).rewind();
+                newBuffer.put(buffer);
+            }
+            bufferStart = 0;
+        } else {
+            newBuffer = ByteBuffer.allocate((int) Math.min(Math.max(length, FIRST_READ_BYTES), maxLength - from));
+            bufferStart = from;
+        }
+        newBuffer.order(buffer.order());
+        while (newBuffer.hasRemaining()) {
+            int count = channel.read(newBuffer, bufferStart + newBuffer.position());
+            if (count < 0) break;
+            bytesRead += count;
+        }
+        ((Buffer) newBuffer).flip();
+        buffer = newBuffer;
+        return from >= bufferStart && end <= bufferStart + buffer.limit();
+    }
+}
@@ -0,0 +1,484 @@
+package com.yurivolkov.mediatimelinesorter;
+/*
+ * Copyright (c) 2017 yvolk (Yuri Volkov), http://yurivolkov.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.function.Consumer;
+
+/**
+ * Sorts archives, which don't fit into the heap. Only a chunk of files, a run of files of one timeline
+ * between its firm files and names of directories are kept in memory, everything else is in sorted run files
+ * in the spill directory:
+ * <ol>
+ * <li>Scanned files are spilled in runs, sorted by timeline and order in it</li>
+ * <li>The runs are merged, so files of each timeline stream in order and are fixed
+ * between firm files, see {@link TimelineFixer}. Fixed files are spilled in runs, sorted by time</li>
+ * <li>These runs are merged into one chronological file</li>
+ * <li>Files are renumbered and renamed in chunks, reading the chronological file</li>
+ * </ol>
+ * The result is the same as of the in-memory pipeline.
+ * Gapped numbering needs existing global orders of all files, 8 bytes per file.
+ */
+public class ExternalSorter {
+    public static final int DEFAULT_CHUNK_SIZE = 100000;
+    private static final int BUFFER_BYTES = 64 * 1024;
+    private static final Comparator<Entry> BY_TIMELINE = Comparator.<Entry, String>comparing(entry -> entry.parsed.sourceKey)
+            .thenComparingLong(entry -> entry.parsed.sourceOrder)
+            .thenComparingLong(entry -> entry.scanIndex);
+    private static final Comparator<Entry> BY_TIME = Comparator.<Entry>comparingLong(entry -> entry.fileTime)
+            .thenComparingLong(entry -> entry.scanIndex);
+
+    @NotNull
+    private final Sorter sorter;
+    @NotNull
+    private final Path spillRoot;
+    private int chunkSize = DEFAULT_CHUNK_SIZE;
+    private Path spillDir = null;
+    private int spillFilesCount = 0;
+    private final List<Path> dirs = new ArrayList<>();
+    private long filesCount = 0;
+
+    /** A file, as it is stored in run files */
+    static class Entry {
+        final int dirId;
+        final String name;
+        final long scanIndex;
+        final long fileTimeInitial;
+        long fileTime;
+        final long embeddedTime;
+        final ParsedName parsed;
+
+        Entry(int dirId, String name, long scanIndex, long fileTimeInitial, long fileTime, long embeddedTime) {
+            this.dirId = dirId;
+            this.name = name;
+            this.scanIndex = scanIndex;
+            this.fileTimeInitial = fileTimeInitial;
+            this.fileTime = fileTime;
+            this.embeddedTime = embeddedTime;
+            parsed = ParsedName.parse(name);
+        }
+
+        boolean hasFirmTime() {
+            return parsed.parsedTime > 0 || embeddedTime > 0 || MediaFile.isFirmTimeExtension(parsed.getExtension());
+        }
+
+        /** The same as {@link MediaFile#getBestTime()} */
+        long getBestTime() {
+            if (hasFirmTime()) {
+                if (parsed.parsedTime > 0) return parsed.parsedTime;
+                if (embeddedTime > 0) return embeddedTime;
+            }
+            return fileTime;
+        }
+
+        void tryToSetTimeFromName() {
+            if (parsed.parsedTime > 0) {
+                fileTime = parsed.parsedTime;
+            } else if (embeddedTime > 0) {
+                fileTime = embeddedTime;
+            }
+        }
+
+        void write(DataOutputStream out) throws IOException {
+            out.writeInt(dirId);
+            out.writeUTF(name);
+            out.writeLong(scanIndex);
+            out.writeLong(fileTimeInitial);
+            out.writeLong(fileTime);
+            out.writeLong(embeddedTime);
+        }
+
+        /** @return null at the end of a run */
+        @Nullable
+        static Entry read(DataInputStream in) throws IOException {
+            int dirId = in.readInt();
+            if (dirId < 0) return null;
+            return new Entry(dirId, in.readUTF(), in.readLong(), in.readLong(), in.readLong(), in.readLong());
+        }
+
+        @Override
+        public String toString() {
+            return "Entry{" + name + ", time=" + fileTime + "}";
+        }
+    }
+
+    public ExternalSorter(@NotNull Sorter sorter, @NotNull Path spillRoot) {
+        this.sorter = sorter;
+        this.spillRoot = spillRoot;
+    }
+
+    public void setChunkSize(int chunkSize) {
+        this.chunkSize = Math.max(2, chunkSize);
+    }
+
+    public void run() throws IOException {
+        spillDir = Files.createTempDirectory(spillRoot, Sorter.SERVICE_FILE_PREFIX + "spill-");
+        try {
+            List<Path> timelineRuns = sorter.metrics.time("getFiles", this::scan);
+            List<Path> timeRuns = sorter.metrics.time("fixFileTime", () -> fix(timelineRuns));
+            Path sorted = newSpillFile();
+            long[] existingOrders = sorter.metrics.time("sort", () -> mergeByTime(timeRuns, sorted));
+            sorter.metrics.time("saveChanges", () -> save(sorted, existingOrders));
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        } finally {
+            deleteSpillDir();
+        }
+    }
+
+    /** Walks the roots in the same order as the {@link DirectoryScanner} */
+    private List<Path> scan() {
+        Chunk chunk = new Chunk(BY_TIMELINE);
+        for (Path root : sorter.roots) {
+            scanDir(root, sorter.recursive, chunk);
+        }
+        chunk.spill();
+        sorter.metrics.add(Metrics.FILES_SCANNED, filesCount);
+        Log.summary("Found " + filesCount + " files in " + dirs.size() + " directories, spilled to " +
+                chunk.runs.size() + " runs");
+        return chunk.runs;
+    }
+
+    private void scanDir(Path dir, boolean recursive, Chunk chunk) {
+        int dirId = dirs.size();
+        dirs.add(dir);
+        List<Path> subdirs = new ArrayList<>();
+        for (Path path : DirectoryScanner.listDir(dir)) {
+            BasicFileAttributes attributes = DirectoryScanner.readAttributes(path, sorter.metrics);
+            if (attributes == null) continue;
+
+            String name = path.getFileName().toString();
+            if (attributes.isRegularFile()) {
+                if (Sorter.isServiceFile(name)) continue;
+
+                long embeddedTime = 0;
+                if (sorter.isReadEmbeddedTime()) {
+                    EmbeddedTimeReader.Result result = EmbeddedTimeReader.readWithStats(path,
+                            ParsedName.parse(name).getExtension());
+                    sorter.metrics.add(Metrics.BYTES_READ, result.bytesRead);
+                    embeddedTime = result.time;
+                }
+                long fileTime = attributes.lastModifiedTime().toMillis();
+                chunk.add(new Entry(dirId, name, filesCount++, fileTime, fileTime, embeddedTime));
+            } else if (attributes.isDirectory() && recursive) {
+                subdirs.add(path);
+            }
+        }
+        for (Path subdir : subdirs) {
+            scanDir(subdir, true, chunk);
+        }
+    }
+
+    /**
+     * All timelines are validated in the first pass over the runs, see {@link TimelineValidator}.
+     * In the second pass files of a timeline are fixed in windows from a firm file till the next firm file,
+     * so a window holds only files between two firm files.
+     * Fixing in such windows gives the same result as fixing of the whole timeline at once
+     */
+    private List<Path> fix(List<Path> timelineRuns) {
+        TimelineValidator validator = sorter.newValidator();
+        Entry[] firmPrev = {null};
+        merge(timelineRuns, BY_TIMELINE, entry -> {
+            if (!entry.hasFirmTime()) return;
+
+            if (firmPrev[0] != null && firmPrev[0].parsed.sourceKey.equals(entry.parsed.sourceKey)) {
+                validator.validate(entry.parsed.sourceKey, new WindowTimeline(Arrays.asList(firmPrev[0], entry)));
+            }
+            firmPrev[0] = entry;
+        });
+        sorter.metrics.add(Metrics.INVERSIONS, validator.getInversionCount());
+        validator.check();
+
+        Chunk chunk = new Chunk(BY_TIME);
+        List<Entry> window = new ArrayList<>();
+        merge(timelineRuns, BY_TIMELINE, entry -> {
+            if (!window.isEmpty() && !window.get(0).parsed.sourceKey.equals(entry.parsed.sourceKey)) {
+                fixWindow(window, window.size(), chunk, validator);
+            }
+            window.add(entry);
+            if (entry.hasFirmTime() && window.size() > 1) {
+                fixWindow(window, window.size() - 1, chunk, validator);
+            }
+        });
+        fixWindow(window, window.size(), chunk, validator);
+        deleteAll(timelineRuns);
+        chunk.spill();
+        return chunk.runs;
+    }
+
+    /** Fixes the window and moves its first files to the chunk, the rest stays as a start of the next window */
+    private static void fixWindow(List<Entry> window, int countToMove, Chunk chunk, TimelineValidator validator) {
+        if (window.isEmpty()) return;
+
+        if (!validator.isSkipped(window.get(0).parsed.sourceKey)) {
+            TimelineFixer.fix(new WindowTimeline(window));
+        }
+        for (int ind = 0; ind < countToMove; ind++) {
+            chunk.add(window.get(ind));
+        }
+        window.subList(0, countToMove).clear();
+    }
+
+    private static class WindowTimeline implements Timeline {
+        private final List<Entry> entries;
+
+        WindowTimeline(List<Entry> entries) {
+            this.entries = entries;
+        }
+
+        @Override
+        public int size() {
+            return entries.size();
+        }
+
+        @Override
+        public boolean hasFirmTime(int index) {
+            return entries.get(index).hasFirmTime();
+        }
+
+        @Override
+        public long getBestTime(int index) {
+            return entries.get(index).getBestTime();
+        }
+
+        @Override
+        public long getFileTime(int index) {
+            return entries.get(index).fileTime;
+        }
+
+        @Override
+        public void setFileTime(int index, long fileTime) {
+            entries.get(index).fileTime = fileTime;
+        }
+
+        @Override
+        public void tryToSetTimeFromName(int index) {
+            entries.get(index).tryToSetTimeFromName();
+        }
+
+        @Override
+        public String toString(int index) {
+            return entries.get(index).toString();
+        }
+    }
+
+    /** @return existing global orders for the gapped numbering, null for the dense one */
+    @Nullable
+    private long[] mergeByTime(List<Path> timeRuns, Path sorted) {
+        long[] existingOrders = sorter.getNumbering().keepExisting ? new long[(int) filesCount] : null;
+        int[] index = {0};
+        try (DataOutputStream out = newOutput(sorted)) {
+            merge(timeRuns, BY_TIME, entry -> {
+                try {
+                    entry.write(out);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                if (existingOrders != null) {
+                    existingOrders[index[0]++] = entry.parsed.globalOrder;
+                }
+            });
+            out.writeInt(-1);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        deleteAll(timeRuns);
+        return existingOrders;
+    }
+
+    private void save(Path sorted, @Nullable long[] existingOrders) {
+        long[] orders = existingOrders == null ? null : sorter.getNumbering().assign(existingOrders);
+        int nDigits;
+        if (orders == null) {
+            nDigits = Sorter.calcNDigits((int) filesCount);
+        } else {
+            int existingNDigits = 0;
+            try (DataInputStream in = newInput(sorted)) {
+                for (Entry entry = Entry.read(in); entry != null; entry = Entry.read(in)) {
+                    existingNDigits = Math.max(existingNDigits, entry.parsed.getGlobalOrderLength());
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            nDigits = sorter.getNumbering().calcNDigits(orders, existingNDigits);
+        }
+        List<FileChange> changes = new ArrayList<>();
+        int chunkFilesCount = 0;
+        long index = 0;
+        try (DataInputStream in = newInput(sorted)) {
+            for (Entry entry = Entry.read(in); entry != null; entry = Entry.read(in)) {
+                long order = orders == null ? index + 1 : orders[(int) index];
+                index++;
+                String newName = String.format("%0" + nDigits + "d-%s", order, entry.parsed.getPermanentNamePart());
+                chunkFilesCount++;
+                if (!newName.equals(entry.name) || entry.fileTime != entry.fileTimeInitial) {
+                    changes.add(new FileChange(dirs.get(entry.dirId).resolve(entry.name), newName,
+                            entry.fileTimeInitial, entry.fileTime));
+                } else {
+                    String name = entry.name;
+                    Log.trace(() -> "No changes for " + name);
+                }
+                if (chunkFilesCount == chunkSize) {
+                    sorter.saveChanges(changes, chunkFilesCount);
+                    changes.clear();
+                    chunkFilesCount = 0;
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        if (chunkFilesCount > 0) {
+            sorter.saveChanges(changes, chunkFilesCount);
+        }
+    }
+
+    /** Sorted in memory and spilled to a run file, when full */
+    private class Chunk {
+        final Comparator<Entry> comparator;
+        final List<Entry> entries = new ArrayList<>();
+        final List<Path> runs = new ArrayList<>();
+
+        Chunk(Comparator<Entry> comparator) {
+            this.comparator = comparator;
+        }
+
+        void add(Entry entry) {
+            entries.add(entry);
+            if (entries.size() >= chunkSize) {
+                spill();
+            }
+        }
+
+        void spill() {
+            if (entries.isEmpty()) return;
+
+            entries.sort(comparator);
+            Path run = newSpillFile();
+            try (DataOutputStream out = newOutput(run)) {
+                for (Entry entry : entries) {
+                    entry.write(out);
+                }
+                out.writeInt(-1);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            runs.add(run);
+            entries.clear();
+        }
+    }
+
+    /** K-way merge of sorted runs */
+    private static void merge(List<Path> runs, Comparator<Entry> comparator, Consumer<Entry> consumer) {
+        List<RunReader> readers = new ArrayList<>();
+        PriorityQueue<RunReader> queue = new PriorityQueue<>(Math.max(1, runs.size()),
+                (o1, o2) -> comparator.compare(o1.current, o2.current));
+        try {
+            for (Path run : runs) {
+                RunReader reader = new RunReader(run);
+                readers.add(reader);
+                if (reader.next()) {
+                    queue.add(reader);
+                }
+            }
+            while (!queue.isEmpty()) {
+                RunReader reader = queue.poll();
+                consumer.accept(reader.current);
+                if (reader.next()) {
+                    queue.add(reader);
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            for (RunReader reader : readers) {
+                reader.close();
+            }
+        }
+    }
+
+    private static class RunReader implements Closeable {
+        private final DataInputStream in;
+        Entry current = null;
+
+        RunReader(Path run) throws IOException {
+            in = newInput(run);
+        }
+
+        boolean next() throws IOException {
+            current = Entry.read(in);
+            return current != null;
+        }
+
+        @Override
+        public void close() {
+            try {
+                in.close();
+            } catch (IOException e) {
+                Log.error("Failed to close a run file, error: " + e);
+            }
+        }
+    }
+
+    private Path newSpillFile() {
+        return spillDir.resolve("run-" + (spillFilesCount++));
+    }
+
+    private static DataOutputStream newOutput(Path path) throws IOException {
+        return new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(path), BUFFER_BYTES));
+    }
+
+    private static DataInputStream newInput(Path path) throws IOException {
+        return new DataInputStream(new BufferedInputStream(Files.newInputStream(path), BUFFER_BYTES));
+    }
+
+    private static void deleteAll(List<Path> paths) {
+        for (Path path : paths) {
+            try {
+                Files.deleteIfExists(path);
+            } catch (IOException e) {
+                Log.error("Failed to delete a run file: " + path + ", error: " + e);
+            }
+        }
+    }
+
+    private void deleteSpillDir() {
+        if (spillDir == null) return;
+
+        List<Path> paths = new ArrayList<>();
+        for (Path path : DirectoryScanner.listDir(spillDir)) {
+            paths.add(path);
+        }
+        paths.add(spillDir);
+        deleteAll(paths);
+    }
+}
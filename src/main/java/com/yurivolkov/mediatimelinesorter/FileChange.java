@@ -0,0 +1,60 @@
+package com.yurivolkov.mediatimelinesorter;
+/*
+ * Copyright (c) 2017 yvolk (Yuri Volkov), http://yurivolkov.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import org.jetbrains.annotations.NotNull;
+
+import java.nio.file.Path;
+
+/**
+ * New name (in the same directory) and new time of a file
+ */
+public class FileChange {
+    @NotNull
+    final Path source;
+    @NotNull
+    final String fileName;
+    final long fileTimeInitial;
+    final long fileTime;
+
+    public FileChange(@NotNull Path source, @NotNull String fileName, long fileTimeInitial, long fileTime) {
+        this.source = source;
+        this.fileName = fileName;
+        this.fileTimeInitial = fileTimeInitial;
+        this.fileTime = fileTime;
+    }
+
+    public boolean nameChanged() {
+        return !source.getFileName().toString().equals(fileName);
+    }
+
+    public boolean timeChanged() {
+        return fileTime != fileTimeInitial;
+    }
+
+    @NotNull
+    public Path getTarget() {
+        return source.resolveSibling(fileName);
+    }
+
+    @Override
+    public String toString() {
+        return "FileChange{" + source +
+                (nameChanged() ? " to " + fileName : "") +
+                (timeChanged() ? ", " + (fileTime - fileTimeInitial) + "ms" : "") +
+                '}';
+    }
+}
@@ -0,0 +1,435 @@
+package com.yurivolkov.mediatimelinesorter;
+/*
+ * Copyright (c) 2017 yvolk (Yuri Volkov), http://yurivolkov.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import org.jetbrains.annotations.NotNull;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.IntStream;
+
+/**
+ * Compact columnar alternative to a list of {@link MediaFile}s for huge archives:
+ * each file is a row in primitive arrays, directories, timeline keys and extensions
+ * are stored once in dictionaries. Only the file name remains an object per file.
+ */
+public class FileTable {
+    private static final int INITIAL_CAPACITY = 1024;
+
+    private int size = 0;
+    private final List<Path> dirs = new ArrayList<>();
+    private final Dictionary keys = new Dictionary();
+    private final Dictionary extensions = new Dictionary();
+    /** Ids of extensions of files with firm time */
+    private final BitSet firmExtensionIds = new BitSet();
+
+    private int[] dirIds = new int[INITIAL_CAPACITY];
+    private String[] names = new String[INITIAL_CAPACITY];
+    private int[] permanentNameStarts = new int[INITIAL_CAPACITY];
+    private long[] fileTimesInitial = new long[INITIAL_CAPACITY];
+    private long[] fileTimes = new long[INITIAL_CAPACITY];
+    /** 0 if not parsed */
+    private long[] parsedTimes = new long[INITIAL_CAPACITY];
+    /** 0 if not read, see {@link #readEmbeddedTimes(Metrics)} */
+    private long[] embeddedTimes = new long[INITIAL_CAPACITY];
+    private long[] sourceOrders = new long[INITIAL_CAPACITY];
+    private long[] globalOrders = new long[INITIAL_CAPACITY];
+    private int[] timelineIds = new int[INITIAL_CAPACITY];
+    private int[] extensionIds = new int[INITIAL_CAPACITY];
+
+    /** Rows in the chronological order, calculated by {@link #sort()} */
+    private int[] sortedRows = new int[0];
+    /** Rows, grouped by timelines, see {@link #groupByTimeline()} */
+    private int[] timelineRows = new int[0];
+    private int[] timelineStarts = new int[1];
+    /** New global order of each row */
+    private long[] newOrders = new long[0];
+    private int nDigits = 0;
+
+    private static class Dictionary {
+        private final Map<String, Integer> ids = new HashMap<>();
+        private final List<String> values = new ArrayList<>();
+
+        int idOf(String value) {
+            Integer id = ids.get(value);
+            if (id == null) {
+                id = values.size();
+                ids.put(value, id);
+                values.add(value);
+            }
+            return id;
+        }
+
+        String get(int id) {
+            return values.get(id);
+        }
+
+        int size() {
+            return values.size();
+        }
+    }
+
+    /**
+     * Scans directories with the {@link DirectoryScanner}, in parallel, when invoked in
+     * a {@link java.util.concurrent.ForkJoinPool}. Only names and times of files are kept till they are added
+     */
+    public static FileTable scan(@NotNull List<Path> roots, boolean recursive) {
+        return scan(roots, recursive, new Metrics());
+    }
+
+    public static FileTable scan(@NotNull List<Path> roots, boolean recursive, @NotNull Metrics metrics) {
+        List<DirectoryScanner.Directory<ScannedFile>> directories = new DirectoryScanner(recursive, metrics)
+                .scanDirectories(roots, (path, attributes) ->
+                        new ScannedFile(path.getFileName().toString(), attributes.lastModifiedTime().toMillis()));
+        FileTable table = new FileTable();
+        for (DirectoryScanner.Directory<ScannedFile> directory : directories) {
+            int dirId = table.dirs.size();
+            table.dirs.add(directory.dir);
+            for (ScannedFile file : directory.files) {
+                table.add(dirId, file.name, file.fileTime);
+            }
+        }
+        return table;
+    }
+
+    private static class ScannedFile {
+        final String name;
+        final long fileTime;
+
+        ScannedFile(String name, long fileTime) {
+            this.name = name;
+            this.fileTime = fileTime;
+        }
+    }
+
+    void add(int dirId, @NotNull String name, long fileTime) {
+        if (size == names.length) {
+            grow(size * 2);
+        }
+        ParsedName parsedName = ParsedName.parse(name);
+        int row = size++;
+        dirIds[row] = dirId;
+        names[row] = name;
+        permanentNameStarts[row] = name.length() - parsedName.getPermanentNamePart().length();
+        fileTimesInitial[row] = fileTime;
+        fileTimes[row] = fileTime;
+        parsedTimes[row] = parsedName.parsedTime;
+        sourceOrders[row] = parsedName.sourceOrder;
+        globalOrders[row] = parsedName.globalOrder;
+        timelineIds[row] = keys.idOf(parsedName.sourceKey);
+        String extension = parsedName.getExtension();
+        int extensionId = extensions.idOf(extension);
+        extensionIds[row] = extensionId;
+        if (MediaFile.isFirmTimeExtension(extension)) {
+            firmExtensionIds.set(extensionId);
+        }
+    }
+
+    private void grow(int capacity) {
+        dirIds = Arrays.copyOf(dirIds, capacity);
+        names = Arrays.copyOf(names, capacity);
+        permanentNameStarts = Arrays.copyOf(permanentNameStarts, capacity);
+        fileTimesInitial = Arrays.copyOf(fileTimesInitial, capacity);
+        fileTimes = Arrays.copyOf(fileTimes, capacity);
+        parsedTimes = Arrays.copyOf(parsedTimes, capacity);
+        embeddedTimes = Arrays.copyOf(embeddedTimes, capacity);
+        sourceOrders = Arrays.copyOf(sourceOrders, capacity);
+        globalOrders = Arrays.copyOf(globalOrders, capacity);
+        timelineIds = Arrays.copyOf(timelineIds, capacity);
+        extensionIds = Arrays.copyOf(extensionIds, capacity);
+    }
+
+    /**
+     * Reads times, embedded into the files, see {@link EmbeddedTimeReader}.
+     * Files are read in parallel, when invoked in a {@link java.util.concurrent.ForkJoinPool}
+     */
+    public void readEmbeddedTimes(@NotNull Metrics metrics) {
+        IntStream.range(0, size).parallel().forEach(row -> {
+            EmbeddedTimeReader.Result result = EmbeddedTimeReader.readWithStats(getPath(row),
+                    extensions.get(extensionIds[row]));
+            embeddedTimes[row] = result.time;
+            metrics.add(Metrics.BYTES_READ, result.bytesRead);
+        });
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int timelineCount() {
+        return keys.size();
+    }
+
+    /** Timelines are fixed in parallel, when invoked in a {@link java.util.concurrent.ForkJoinPool} */
+    public void fixFileTime() {
+        fixFileTime(new TimelineValidator(TimelineValidator.OnConflict.STOP));
+    }
+
+    /** All timelines are validated first, see {@link TimelineValidator#check()} */
+    public void fixFileTime(@NotNull TimelineValidator validator) {
+        groupByTimeline();
+        int[] rows = timelineRows;
+        int[] starts = timelineStarts;
+        IntStream.range(0, keys.size()).parallel().forEach(id -> {
+            sortByKey(rows, starts[id], starts[id + 1], sourceOrders);
+            validator.validate(keys.get(id), new TableTimeline(rows, starts[id], starts[id + 1]));
+        });
+        validator.check();
+        IntStream.range(0, keys.size()).parallel().forEach(id -> {
+            if (!validator.isSkipped(keys.get(id))) {
+                TimelineFixer.fix(new TableTimeline(rows, starts[id], starts[id + 1]));
+            }
+        });
+    }
+
+    /** Rows of each timeline are kept together, timeline starts are in the second array */
+    private void groupByTimeline() {
+        timelineRows = new int[size];
+        timelineStarts = new int[keys.size() + 1];
+        for (int row = 0; row < size; row++) {
+            timelineStarts[timelineIds[row] + 1]++;
+        }
+        for (int id = 0; id < keys.size(); id++) {
+            timelineStarts[id + 1] += timelineStarts[id];
+        }
+        int[] positions = Arrays.copyOf(timelineStarts, keys.size());
+        for (int row = 0; row < size; row++) {
+            timelineRows[positions[timelineIds[row]]++] = row;
+        }
+    }
+
+    private class TableTimeline implements Timeline {
+        private final int[] rows;
+        private final int from;
+        private final int to;
+
+        TableTimeline(int[] rows, int from, int to) {
+            this.rows = rows;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        public int size() {
+            return to - from;
+        }
+
+        @Override
+        public boolean hasFirmTime(int index) {
+            return FileTable.this.hasFirmTime(rows[from + index]);
+        }
+
+        @Override
+        public long getBestTime(int index) {
+            int row = rows[from + index];
+            return hasFirmTime(index) && firmTime(row) > 0 ? firmTime(row) : fileTimes[row];
+        }
+
+        @Override
+        public long getFileTime(int index) {
+            return fileTimes[rows[from + index]];
+        }
+
+        @Override
+        public void setFileTime(int index, long fileTime) {
+            fileTimes[rows[from + index]] = fileTime;
+        }
+
+        @Override
+        public void tryToSetTimeFromName(int index) {
+            int row = rows[from + index];
+            if (firmTime(row) > 0) {
+                fileTimes[row] = firmTime(row);
+            }
+        }
+
+        @Override
+        public String toString(int index) {
+            return FileTable.this.toString(rows[from + index]);
+        }
+    }
+
+    private boolean hasFirmTime(int row) {
+        return parsedTimes[row] > 0 || embeddedTimes[row] > 0 || firmExtensionIds.get(extensionIds[row]);
+    }
+
+    /** @return time, parsed from the name or embedded into the file, 0 if none */
+    private long firmTime(int row) {
+        return parsedTimes[row] > 0 ? parsedTimes[row] : embeddedTimes[row];
+    }
+
+    /** @return times of files with firm time by timeline keys, see {@link ClockOffsetEstimator} */
+    @NotNull
+    public Map<String, long[]> getFirmTimes() {
+        int[] counts = new int[keys.size()];
+        for (int row = 0; row < size; row++) {
+            if (hasFirmTime(row)) {
+                counts[timelineIds[row]]++;
+            }
+        }
+        long[][] times = new long[keys.size()][];
+        for (int id = 0; id < keys.size(); id++) {
+            times[id] = new long[counts[id]];
+            counts[id] = 0;
+        }
+        for (int row = 0; row < size; row++) {
+            if (hasFirmTime(row)) {
+                int id = timelineIds[row];
+                times[id][counts[id]++] = firmTime(row) > 0 ? firmTime(row) : fileTimes[row];
+            }
+        }
+        Map<String, long[]> firmTimes = new HashMap<>();
+        for (int id = 0; id < keys.size(); id++) {
+            firmTimes.put(keys.get(id), times[id]);
+        }
+        return firmTimes;
+    }
+
+    /** Shifts all times of files of the timelines, e.g. to correct clocks of their devices */
+    public void shiftTimes(@NotNull Map<String, Long> offsets) {
+        long[] offsetsById = new long[keys.size()];
+        for (int id = 0; id < keys.size(); id++) {
+            offsetsById[id] = offsets.getOrDefault(keys.get(id), 0L);
+        }
+        for (int row = 0; row < size; row++) {
+            long millis = offsetsById[timelineIds[row]];
+            fileTimes[row] += millis;
+            if (parsedTimes[row] > 0) {
+                parsedTimes[row] += millis;
+            }
+            if (embeddedTimes[row] > 0) {
+                embeddedTimes[row] += millis;
+            }
+        }
+    }
+
+    /** Stable sort by file time and numbering, the same as for a list of files */
+    public void sort(@NotNull Numbering numbering) {
+        if (timelineRows.length != size) {
+            groupByTimeline();
+        }
+        sortedRows = new int[size];
+        int[] index = {0};
+        TimelineMerger.merge(timelineRows, timelineStarts, fileTimes, row -> sortedRows[index[0]++] = row);
+        long[] existingOrders = new long[size];
+        int existingNDigits = 0;
+        for (int ind = 0; ind < size; ind++) {
+            int row = sortedRows[ind];
+            existingOrders[ind] = globalOrders[row];
+            if (globalOrders[row] > 0) {
+                existingNDigits = Math.max(existingNDigits, permanentNameStarts[row] - 1);
+            }
+        }
+        long[] orders = numbering.assign(existingOrders);
+        newOrders = new long[size];
+        for (int ind = 0; ind < size; ind++) {
+            newOrders[sortedRows[ind]] = orders[ind];
+        }
+        nDigits = numbering.calcNDigits(orders, existingNDigits);
+    }
+
+    @NotNull
+    String getNewName(int row) {
+        return String.format("%0" + nDigits + "d-%s", newOrders[row], names[row].substring(permanentNameStarts[row]));
+    }
+
+    /** @return changes of files in the chronological order */
+    @NotNull
+    public List<FileChange> getChanges() {
+        List<FileChange> changes = new ArrayList<>();
+        for (int row : sortedRows) {
+            String newName = getNewName(row);
+            if (newName.equals(names[row]) && fileTimes[row] == fileTimesInitial[row]) {
+                Log.trace(() -> "No changes for " + names[row]);
+            } else {
+                changes.add(new FileChange(getPath(row), newName, fileTimesInitial[row], fileTimes[row]));
+            }
+        }
+        return changes;
+    }
+
+    /** New names of all files, including unchanged ones, see {@link ViewBuilder} */
+    @NotNull
+    public List<FileChange> getAllFiles() {
+        List<FileChange> files = new ArrayList<>(size);
+        for (int row : sortedRows) {
+            files.add(new FileChange(getPath(row), getNewName(row), fileTimesInitial[row], fileTimes[row]));
+        }
+        return files;
+    }
+
+    @NotNull
+    Path getPath(int row) {
+        return dirs.get(dirIds[row]).resolve(names[row]);
+    }
+
+    long getFileTime(int row) {
+        return fileTimes[row];
+    }
+
+    String toString(int row) {
+        return "FileTable row{" + getPath(row) + ", key='" + keys.get(timelineIds[row]) + '\'' +
+                ", sourceOrder=" + sourceOrders[row] +
+                ", " + new Date(fileTimes[row]) +
+                (fileTimes[row] == fileTimesInitial[row] ? "" : ", " + (fileTimes[row] - fileTimesInitial[row]) + "ms") +
+                '}';
+    }
+
+    /** Stable merge sort of a range of rows by a key of each row */
+    static void sortByKey(int[] rows, int from, int to, long[] keys) {
+        if (to - from < 2) return;
+
+        int[] sorted = Arrays.copyOfRange(rows, from, to);
+        mergeSort(sorted, new int[sorted.length], 0, sorted.length, keys);
+        System.arraycopy(sorted, 0, rows, from, sorted.length);
+    }
+
+    private static void mergeSort(int[] rows, int[] buffer, int from, int to, long[] keys) {
+        if (to - from <= 16) {
+            for (int ind = from + 1; ind < to; ind++) {
+                int row = rows[ind];
+                int ind2 = ind - 1;
+                while (ind2 >= from && keys[rows[ind2]] > keys[row]) {
+                    rows[ind2 + 1] = rows[ind2];
+                    ind2--;
+                }
+                rows[ind2 + 1] = row;
+            }
+            return;
+        }
+        int middle = (from + to) >>> 1;
+        mergeSort(rows, buffer, from, middle, keys);
+        mergeSort(rows, buffer, middle, to, keys);
+        if (keys[rows[middle - 1]] <= keys[rows[middle]]) return;
+
+        System.arraycopy(rows, from, buffer, from, to - from);
+        int ind1 = from;
+        int ind2 = middle;
+        for (int ind = from; ind < to; ind++) {
+            if (ind1 < middle && (ind2 >= to || keys[buffer[ind1]] <= keys[buffer[ind2]])) {
+                rows[ind] = buffer[ind1++];
+            } else {
+                rows[ind] = buffer[ind2++];
+            }
+        }
+    }
+}
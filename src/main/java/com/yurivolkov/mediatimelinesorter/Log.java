@@ -0,0 +1,160 @@
+package com.yurivolkov.mediatimelinesorter;
+/*
+ * Copyright (c) 2017 yvolk (Yuri Volkov), http://yurivolkov.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.function.Supplier;
+
+/**
+ * Leveled log. Records are handed to a background thread, which writes them in batches,
+ * so callers never wait for the console or a pipe. Errors are written always, to {@link System#err}
+ */
+public class Log {
+    public enum Level {
+        /** Progress of phases and totals */
+        SUMMARY,
+        /** Plus each rename and time change */
+        CHANGES,
+        /** Plus each file found and each file without changes */
+        TRACE
+    }
+
+    private static final int MAX_BATCH_SIZE = 4096;
+    private static volatile Level level = Level.CHANGES;
+    private static final BlockingQueue<Record> queue = new LinkedBlockingQueue<>();
+    private static Thread writer = null;
+
+    private static class Record {
+        final boolean error;
+        final String message;
+        /** Not null for a flush request */
+        final CountDownLatch written;
+
+        Record(boolean error, String message, CountDownLatch written) {
+            this.error = error;
+            this.message = message;
+            this.written = written;
+        }
+    }
+
+    private Log() {
+        // Empty
+    }
+
+    public static void setLevel(@NotNull Level level) {
+        Log.level = level;
+    }
+
+    @NotNull
+    public static Level getLevel() {
+        return level;
+    }
+
+    public static boolean isEnabled(@NotNull Level level) {
+        return level.compareTo(Log.level) <= 0;
+    }
+
+    public static void summary(@NotNull String message) {
+        add(false, message);
+    }
+
+    public static void change(@NotNull String message) {
+        if (isEnabled(Level.CHANGES)) {
+            add(false, message);
+        }
+    }
+
+    /** The message is built only if the level is enabled */
+    public static void trace(@NotNull Supplier<String> message) {
+        if (isEnabled(Level.TRACE)) {
+            add(false, message.get());
+        }
+    }
+
+    public static void error(@NotNull String message) {
+        add(true, message);
+    }
+
+    /** Waits till all records, added before, are written */
+    public static void flush() {
+        CountDownLatch written = new CountDownLatch(1);
+        queue.add(new Record(false, "", written));
+        startWriter();
+        try {
+            written.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void add(boolean error, String message) {
+        queue.add(new Record(error, message, null));
+        startWriter();
+    }
+
+    private static synchronized void startWriter() {
+        if (writer != null) return;
+
+        writer = new Thread(Log::writeBatches, "media-timeline-sorter-log");
+        writer.setDaemon(true);
+        writer.start();
+        Runtime.getRuntime().addShutdownHook(new Thread(Log::flush));
+    }
+
+    private static void writeBatches() {
+        List<Record> batch = new ArrayList<>();
+        StringBuilder builder = new StringBuilder();
+        while (true) {
+            try {
+                batch.add(queue.take());
+            } catch (InterruptedException e) {
+                return;
+            }
+            queue.drainTo(batch, MAX_BATCH_SIZE - 1);
+            boolean error = false;
+            for (Record record : batch) {
+                if (record.written != null) {
+                    write(error, builder);
+                    record.written.countDown();
+                    continue;
+                }
+                if (record.error != error) {
+                    write(error, builder);
+                    error = record.error;
+                }
+                builder.append(record.message).append(System.lineSeparator());
+            }
+            write(error, builder);
+            batch.clear();
+        }
+    }
+
+    private static void write(boolean error, StringBuilder builder) {
+        if (builder.length() == 0) return;
+
+        PrintStream stream = error ? System.err : System.out;
+        stream.print(builder);
+        stream.flush();
+        builder.setLength(0);
+    }
+}
@@ -1,17 +1,104 @@
 package com.yurivolkov.mediatimelinesorter;
 
-import java.nio.file.Path;
-import java.nio.file.Paths;
+import java.io.IOException;
+import java.util.Collections;
 import java.util.List;
 
 public class Main {
+    /** Exit status, when the run was stopped by inversions of firm times, see {@link TimelineValidator} */
+    static final int EXIT_CONFLICTS = 2;
 
     public static void main(String[] args) {
-        Path dir = Paths.get("");
-        Sorter sorter = new Sorter(dir);
-        List<MediaFile> files = sorter.getFiles();
-        sorter.fixFileTime(files);
-        sorter.sort(files);
-        sorter.saveChanges(files);
+        Options options = Options.parse(args);
+        Log.setLevel(options.logLevel);
+        Sorter sorter = new Sorter(options.roots, options.recursive, options.parallelism);
+        sorter.setNumbering(options.numbering);
+        sorter.setReadEmbeddedTime(options.readMetadata);
+        sorter.setOnConflict(options.onConflict);
+        sorter.setDuplicatesMode(options.duplicates);
+        sorter.setClockOffsets(options.clockOffsets, options.referenceKey);
+        boolean stopped = false;
+        try {
+            run(options, sorter);
+        } catch (TimelineValidator.ConflictException e) {
+            Log.error(e.getMessage());
+            stopped = true;
+        }
+        Log.summary(sorter.getMetrics().toSummary());
+        if (options.report != null) {
+            sorter.getMetrics().write(options.report);
+        }
+        Log.flush();
+        if (stopped) {
+            System.exit(EXIT_CONFLICTS);
+        }
+    }
+
+    private static void run(Options options, Sorter sorter) {
+        if (options.apply != null) {
+            sorter.applyPlan(options.apply);
+        } else if (options.external != null) {
+            try {
+                new ExternalSorter(sorter, options.external).run();
+            } catch (IOException e) {
+                Log.error("Failed to spill to " + options.external + ", error: " + e);
+            }
+        } else if (options.compact) {
+            FileTable table = sorter.getFileTable();
+            sorter.estimateClockOffsets(table);
+            sorter.fixFileTime(table);
+            sorter.sort(table);
+            if (options.plan != null) {
+                sorter.writePlan(table.getChanges(), options.plan);
+            } else if (options.view != null) {
+                sorter.buildView(table, options.view);
+            } else {
+                sorter.saveChanges(table);
+            }
+        } else if (options.plan != null) {
+            List<MediaFile> files = sorter.getFiles();
+            sorter.findDuplicates(files);
+            sorter.estimateClockOffsets(files);
+            sorter.fixFileTime(files);
+            sorter.sort(files);
+            sorter.writePlan(sorter.getChanges(files), options.plan);
+        } else {
+            ScanState scanState = options.state ? ScanState.load(options.roots.get(0)) : null;
+            sorter.setScanState(scanState);
+            MetadataCache metadataCache = options.readMetadata ? MetadataCache.load(options.roots.get(0)) : null;
+            sorter.setMetadataCache(metadataCache);
+            List<MediaFile> files = sorter.getFiles();
+            sorter.findDuplicates(files);
+            sorter.estimateClockOffsets(files);
+            sorter.fixFileTime(files);
+            sorter.sort(files);
+            List<FileChange> changes = Collections.emptyList();
+            if (options.view != null) {
+                sorter.buildView(files, options.view);
+                if (metadataCache != null) {
+                    metadataCache.save(files, Collections.emptySet());
+                }
+            } else {
+                RenameExecutor.Result result = sorter.saveChanges(files);
+                changes = result.changes;
+                sorter.saveState(files, result.savedSources);
+            }
+            if (metadataCache != null) {
+                metadataCache.close();
+            }
+            if (options.watch) {
+                Log.summary(sorter.getMetrics().toSummary());
+                watch(sorter, files, changes);
+            }
+        }
+    }
+
+    /** The watcher starts from files in memory, so files, excluded as duplicates, stay excluded */
+    private static void watch(Sorter sorter, List<MediaFile> files, List<FileChange> changes) {
+        try {
+            new TimelineWatcher(sorter, files, changes).watch();
+        } catch (IOException e) {
+            Log.error("Failed to watch for new files, error: " + e);
+        }
     }
 }
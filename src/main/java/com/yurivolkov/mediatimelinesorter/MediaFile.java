@@ -16,11 +16,13 @@ package com.yurivolkov.mediatimelinesorter;
  */
 
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 import java.io.IOException;
 import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
-import java.nio.file.attribute.FileTime;
+import java.nio.file.attribute.BasicFileAttributes;
 import java.util.Arrays;
 import java.util.Date;
 import java.util.List;
@@ -33,23 +35,51 @@ public class MediaFile implements Comparable<MediaFile> {
     private String fileName = "";
     final long fileTimeInitial;
     private long fileTime = 0;
+    private long size = 0;
+    /** Time, read from the file contents, e.g. from EXIF. 0 if not read or not found */
+    private long embeddedTime = 0;
+    /** Offset of the device clock, added to all times of the file, see {@link ClockOffsetEstimator} */
+    private long clockOffset = 0;
 
+    /** Reads the time and the size of the file with one call */
     public MediaFile(@NotNull Path path) {
         this.path = path;
         fileName = path.getFileName().toString();
         name = ParsedName.parse(fileName);
-        try {
-            if (exists()) {
-                fileTime = Files.getLastModifiedTime(path).toMillis();
-            } else {
-                System.out.println("Not a file: " + path);
-            }
-        } catch (IOException e) {
-            e.printStackTrace();
+        BasicFileAttributes attributes = readAttributes(path);
+        if (attributes != null) {
+            fileTime = attributes.lastModifiedTime().toMillis();
+            size = attributes.size();
         }
         fileTimeInitial = fileTime;
     }
 
+    /** Uses attributes, which were already read, so the file is not accessed again */
+    public MediaFile(@NotNull Path path, @NotNull BasicFileAttributes attributes) {
+        this.path = path;
+        fileName = path.getFileName().toString();
+        name = ParsedName.parse(fileName);
+        fileTime = attributes.lastModifiedTime().toMillis();
+        size = attributes.size();
+        fileTimeInitial = fileTime;
+    }
+
+    /** @return null if not a regular file or failed to read */
+    @Nullable
+    private static BasicFileAttributes readAttributes(Path path) {
+        try {
+            BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+            if (attributes.isRegularFile()) return attributes;
+        } catch (NoSuchFileException e) {
+            // Not a file
+        } catch (IOException | SecurityException e) {
+            Log.error("Failed to read attributes of " + path + ", error: " + e);
+            return null;
+        }
+        Log.trace(() -> "Not a file: " + path);
+        return null;
+    }
+
     public boolean exists() {
         return exists(path);
     }
@@ -58,11 +88,11 @@ public class MediaFile implements Comparable<MediaFile> {
         return exists(getTargetPath());
     }
 
-    private static boolean exists(Path path) {
+    static boolean exists(Path path) {
         try {
             return Files.isRegularFile(path);
         } catch (SecurityException e) {
-            System.err.println("Security exception for: " + path);
+            Log.error("Security exception for: " + path);
         }
         return false;
     }
@@ -71,6 +101,42 @@ public class MediaFile implements Comparable<MediaFile> {
         return name.hasSourceTimeline();
     }
 
+    /**
+     * Reads time, embedded into the file, see {@link EmbeddedTimeReader}
+     * @return number of bytes read
+     */
+    public long readEmbeddedTime() {
+        EmbeddedTimeReader.Result result = EmbeddedTimeReader.readWithStats(path, name.getExtension());
+        embeddedTime = result.time;
+        return result.bytesRead;
+    }
+
+    /**
+     * Contents of the file are not read, if the cache has its time
+     * @return number of bytes read
+     */
+    public long readEmbeddedTime(@Nullable MetadataCache cache) {
+        long cached = cache == null ? MetadataCache.NOT_CACHED : cache.get(this);
+        if (cached == MetadataCache.NOT_CACHED) {
+            return readEmbeddedTime();
+        }
+        embeddedTime = cached;
+        return 0;
+    }
+
+    /** The same file, e.g. after renaming, has the same embedded time */
+    void copyEmbeddedTime(@NotNull MediaFile other) {
+        embeddedTime = other.embeddedTime;
+    }
+
+    public long getEmbeddedTime() {
+        return embeddedTime;
+    }
+
+    public long getSize() {
+        return size;
+    }
+
     public long getFileTime() {
         return fileTime;
     }
@@ -100,66 +166,9 @@ public class MediaFile implements Comparable<MediaFile> {
         return fileTime != fileTimeInitial;
     }
 
-    /**
-     * @return true if saved and succeeded
-     */
-    public boolean save() {
-        if (!changed()) {
-            System.out.println("No changes for " + name.name);
-            return false;
-        }
-        if (!exists()) {
-            System.err.println("Source doesn't exist: " + path);
-            return false;
-        }
-        if (nameChanged()) {
-            if (targetExists()) {
-                System.err.println("Target exists for: " + path +
-                        ", target: " + getTargetPath());
-                return false;
-            }
-
-            String msgLog = "Renaming " + name.name + " to " + fileName;
-            try {
-                Files.move(path, getTargetPath());
-                System.out.println(msgLog);
-            } catch (IOException e) {
-                System.err.println(msgLog + ", error:" + e.getMessage());
-                e.printStackTrace();
-                return false;
-            }
-        }
-        if (timeChanged()) {
-            if (!targetExists()) {
-                System.err.println("Target doesn't exist for: " + path +
-                        ", target: " + getTargetPath());
-                return false;
-            }
-
-            String msgLog = "Changing time of " + name.name + ": " + timeDifference() + " to " +
-                    new Date((getFileTime()));
-            try {
-                Files.setLastModifiedTime(getTargetPath(), FileTime.fromMillis(getFileTime()));
-                System.out.println(msgLog);
-            } catch (IOException e) {
-                System.err.println(msgLog + ", error:" + e.getMessage());
-                e.printStackTrace();
-                return false;
-            }
-        }
-        return true;
-    }
-
     @NotNull
-    private String timeDifference() {
-        long shift = fileTime - fileTimeInitial;
-        if (Math.abs(shift) > 1000 * 60 * 10) {
-            return shift / 1000 / 60 + " min";
-        }
-        if (Math.abs(shift) > 1000 * 10) {
-            return shift / 1000 + " sec";
-        }
-        return shift + " ms";
+    public FileChange toChange() {
+        return new FileChange(path, fileName, fileTimeInitial, fileTime);
     }
 
     Path getTargetPath() {
@@ -167,22 +176,38 @@ public class MediaFile implements Comparable<MediaFile> {
     }
 
     public long getBestTime() {
-        return hasFirmTime() && name.parsedTime > 0
-            ? name.parsedTime
-            : getFileTime();
+        if (hasFirmTime()) {
+            if (name.parsedTime > 0) return name.parsedTime + clockOffset;
+            if (embeddedTime > 0) return embeddedTime + clockOffset;
+        }
+        return getFileTime();
     }
 
     public boolean hasFirmTime() {
-        return name.parsedTime > 0 || firmTimeExtensions.contains(name.extension.toLowerCase());
+        return name.parsedTime > 0 || embeddedTime > 0 || isFirmTimeExtension(name.getExtension());
+    }
+
+    static boolean isFirmTimeExtension(@NotNull String extension) {
+        return firmTimeExtensions.contains(extension.toLowerCase());
     }
 
+    /** For many lookups better build the {@link MediaFileIndex} once and use {@link #getSameFile(MediaFileIndex)} */
     public MediaFile getSameFile(List<MediaFile> files) {
         for (MediaFile file : files) {
             if (name.getPermanentNamePart().equals(file.name.getPermanentNamePart())) {
                 return file;
             }
         }
-        return new MediaFile(files.get(0).path.resolveSibling("notFound.txt"));
+        return notFound(files.get(0));
+    }
+
+    public MediaFile getSameFile(MediaFileIndex index) {
+        MediaFile file = index.getSameFile(this);
+        return file == null ? notFound(this) : file;
+    }
+
+    private static MediaFile notFound(MediaFile sibling) {
+        return new MediaFile(sibling.path.resolveSibling("notFound.txt"));
     }
 
     @Override
@@ -194,9 +219,18 @@ public class MediaFile implements Comparable<MediaFile> {
                 '}';
     }
 
+    /** Sets time, parsed from the name or embedded into the file, if any */
     public void tryToSetTimeFromName() {
         if (name.parsedTime > 0) {
-            setFileTime(name.parsedTime);
+            setFileTime(name.parsedTime + clockOffset);
+        } else if (embeddedTime > 0) {
+            setFileTime(embeddedTime + clockOffset);
         }
     }
+
+    /** Shifts all times of the file, e.g. to correct the clock of its device */
+    public void shiftTime(long millis) {
+        clockOffset += millis;
+        fileTime += millis;
+    }
 }
@@ -0,0 +1,60 @@
+package com.yurivolkov.mediatimelinesorter;
+/*
+ * Copyright (c) 2017 yvolk (Yuri Volkov), http://yurivolkov.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Finds the same file (e.g. before and after renaming) by its {@link ParsedName#getPermanentNamePart()}.
+ * Build it once per scan, then each lookup takes O(1).
+ */
+public class MediaFileIndex {
+    private final Map<String, MediaFile> files;
+
+    public MediaFileIndex(@NotNull List<MediaFile> files) {
+        this.files = new HashMap<>(files.size() * 4 / 3 + 1);
+        for (MediaFile file : files) {
+            // The first one wins, if the same name is in several directories
+            this.files.putIfAbsent(file.name.getPermanentNamePart(), file);
+        }
+    }
+
+    /** @return null if not found */
+    @Nullable
+    public MediaFile getSameFile(@NotNull MediaFile file) {
+        return files.get(file.name.getPermanentNamePart());
+    }
+
+    /** @return the same files in the same order as requested, nulls for not found files */
+    @NotNull
+    public List<MediaFile> getSameFiles(@NotNull List<MediaFile> toFind) {
+        List<MediaFile> found = new ArrayList<>(toFind.size());
+        for (MediaFile file : toFind) {
+            found.add(getSameFile(file));
+        }
+        return found;
+    }
+
+    public int size() {
+        return files.size();
+    }
+}
@@ -0,0 +1,304 @@
+package com.yurivolkov.mediatimelinesorter;
+/*
+ * Copyright (c) 2017 yvolk (Yuri Volkov), http://yurivolkov.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Cache of times, embedded into files (see {@link EmbeddedTimeReader}), so contents of unchanged files
+ * are not read again on reruns. A file is identified by its permanent name part, size and time.
+ * <p>
+ * The on-disk store is a file in the processed directory with fixed size records, sorted by key.
+ * Only every {@link #BLOCK_SIZE}-th key is kept in memory, a block of records is read on lookup.
+ * Each file is looked up once per run, so whole blocks, not found entries, are kept in a bounded LRU map:
+ * files of the same block are read from the store once.
+ */
+public class MetadataCache implements Closeable {
+    public static final String FILE_NAME = Sorter.SERVICE_FILE_PREFIX + "metadata";
+    /** Returned, if the file is not in the cache */
+    public static final long NOT_CACHED = -1;
+    private static final int MAGIC = 0x4D544D43;
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 12;
+    /** Name hash, size, file time and embedded time */
+    private static final int RECORD_BYTES = 32;
+    private static final int BLOCK_SIZE = 64;
+    /** Number of blocks in the LRU map, 2 KB each */
+    private static final int LRU_CAPACITY = 1024;
+
+    private final Path path;
+    private volatile FileChannel channel = null;
+    private int recordsCount = 0;
+    /** The first key of each block, three longs per key */
+    private long[] fences = new long[0];
+    /** Records of blocks by their indexes, four longs per record */
+    private final Map<Integer, long[]> blocks = new LinkedHashMap<Integer, long[]>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Integer, long[]> eldest) {
+            return size() > LRU_CAPACITY;
+        }
+    };
+    private final LongAdder hitCount = new LongAdder();
+    private final LongAdder missCount = new LongAdder();
+
+    private static class Key {
+        final long nameHash;
+        final long size;
+        final long fileTime;
+
+        Key(long nameHash, long size, long fileTime) {
+            this.nameHash = nameHash;
+            this.size = size;
+            this.fileTime = fileTime;
+        }
+
+        static Key of(@NotNull MediaFile file) {
+            return new Key(hash(file.name.getPermanentNamePart()), file.getSize(), file.getFileTime());
+        }
+
+        int compareTo(long otherHash, long otherSize, long otherFileTime) {
+            int result = Long.compare(nameHash, otherHash);
+            if (result == 0) result = Long.compare(size, otherSize);
+            if (result == 0) result = Long.compare(fileTime, otherFileTime);
+            return result;
+        }
+    }
+
+    private MetadataCache(Path path) {
+        this.path = path;
+    }
+
+    /** @return empty cache, if there is no store file or it cannot be read */
+    public static MetadataCache load(@NotNull Path dir) {
+        MetadataCache cache = new MetadataCache(dir.resolve(FILE_NAME));
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(cache.path)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                Log.error("Unknown format of the metadata cache: " + cache.path);
+                return cache;
+            }
+            int count = in.readInt();
+            if (Files.size(cache.path) != HEADER_BYTES + (long) count * RECORD_BYTES) {
+                Log.error("Truncated metadata cache: " + cache.path);
+                return cache;
+            }
+            long[] fences = new long[(count + BLOCK_SIZE - 1) / BLOCK_SIZE * 3];
+            for (int ind = 0; ind < count; ind++) {
+                if (ind % BLOCK_SIZE == 0) {
+                    int fence = ind / BLOCK_SIZE * 3;
+                    fences[fence] = in.readLong();
+                    fences[fence + 1] = in.readLong();
+                    fences[fence + 2] = in.readLong();
+                    in.skipBytes(RECORD_BYTES - 24);
+                } else {
+                    in.skipBytes(RECORD_BYTES);
+                }
+            }
+            cache.channel = FileChannel.open(cache.path, StandardOpenOption.READ);
+            cache.fences = fences;
+            cache.recordsCount = count;
+            Log.summary("Loaded metadata cache of " + count + " files from " + cache.path);
+        } catch (NoSuchFileException e) {
+            Log.summary("No metadata cache yet: " + cache.path);
+        } catch (IOException | RuntimeException e) {
+            Log.error("Failed to read the metadata cache: " + cache.path + ", error: " + e);
+        }
+        return cache;
+    }
+
+    /**
+     * Safe to call concurrently: a block is read from the store outside of locks
+     * @return cached embedded time (0 if the file has none) or {@link #NOT_CACHED}
+     */
+    public long get(@NotNull MediaFile file) {
+        long time = find(Key.of(file));
+        if (time == NOT_CACHED) {
+            missCount.increment();
+        } else {
+            hitCount.increment();
+        }
+        return time;
+    }
+
+    private long find(Key key) {
+        int blocksCount = fences.length / 3;
+        int low = 0;
+        int high = blocksCount - 1;
+        int blockIndex = -1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            if (key.compareTo(fences[mid * 3], fences[mid * 3 + 1], fences[mid * 3 + 2]) >= 0) {
+                blockIndex = mid;
+                low = mid + 1;
+            } else {
+                high = mid - 1;
+            }
+        }
+        if (blockIndex < 0) return NOT_CACHED;
+
+        long[] records = getBlock(blockIndex);
+        if (records == null) return NOT_CACHED;
+
+        for (int offset = 0; offset < records.length; offset += 4) {
+            if (key.compareTo(records[offset], records[offset + 1], records[offset + 2]) == 0) {
+                return records[offset + 3];
+            }
+        }
+        return NOT_CACHED;
+    }
+
+    /** @return null if the block cannot be read */
+    @Nullable
+    private long[] getBlock(int blockIndex) {
+        synchronized (blocks) {
+            long[] records = blocks.get(blockIndex);
+            if (records != null) return records;
+        }
+        // Two threads may read the same block, this is rare and harmless
+        long[] records = readBlock(blockIndex);
+        if (records != null) {
+            synchronized (blocks) {
+                blocks.put(blockIndex, records);
+            }
+        }
+        return records;
+    }
+
+    @Nullable
+    private long[] readBlock(int blockIndex) {
+        FileChannel channel = this.channel;
+        if (channel == null) return null;
+
+        int count = Math.min(BLOCK_SIZE, recordsCount - blockIndex * BLOCK_SIZE);
+        ByteBuffer block = ByteBuffer.allocate(count * RECORD_BYTES);
+        long position = HEADER_BYTES + (long) blockIndex * BLOCK_SIZE * RECORD_BYTES;
+        try {
+            while (block.hasRemaining()) {
+                if (channel.read(block, position + block.position()) < 0) return null;
+            }
+        } catch (IOException e) {
+            Log.error("Failed to read the metadata cache: " + path + ", error: " + e);
+            return null;
+        }
+        long[] records = new long[count * 4];
+        ((Buffer) block).flip();
+        block.asLongBuffer().get(records);
+        return records;
+    }
+
+    public long getHitCount() {
+        return hitCount.sum();
+    }
+
+    public long getMissCount() {
+        return missCount.sum();
+    }
+
+    /**
+     * Replaces the store with entries of the files, after changes were saved,
+     * so entries of removed files are dropped.
+     * Files are keyed by their time on disk: the new time, if the change was saved, and the initial time otherwise,
+     * e.g. when a view was built instead
+     * @param savedSources paths of files (before renaming), which changes were saved
+     */
+    public synchronized void save(@NotNull List<MediaFile> files, @NotNull Set<Path> savedSources) {
+        long[] keys = new long[files.size() * 4];
+        Integer[] order = new Integer[files.size()];
+        for (int ind = 0; ind < files.size(); ind++) {
+            MediaFile file = files.get(ind);
+            keys[ind * 4] = hash(file.name.getPermanentNamePart());
+            keys[ind * 4 + 1] = file.getSize();
+            keys[ind * 4 + 2] = savedSources.contains(file.path) ? file.getFileTime() : file.fileTimeInitial;
+            keys[ind * 4 + 3] = file.getEmbeddedTime();
+            order[ind] = ind;
+        }
+        Arrays.sort(order, (o1, o2) -> {
+            int result = Long.compare(keys[o1 * 4], keys[o2 * 4]);
+            if (result == 0) result = Long.compare(keys[o1 * 4 + 1], keys[o2 * 4 + 1]);
+            if (result == 0) result = Long.compare(keys[o1 * 4 + 2], keys[o2 * 4 + 2]);
+            return result;
+        });
+        Path tmpPath = path.resolveSibling(FILE_NAME + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmpPath)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(order.length);
+            for (int ind : order) {
+                for (int field = 0; field < 4; field++) {
+                    out.writeLong(keys[ind * 4 + field]);
+                }
+            }
+        } catch (IOException e) {
+            Log.error("Failed to write the metadata cache: " + tmpPath + ", error: " + e);
+            return;
+        }
+        close();
+        try {
+            Files.move(tmpPath, path, StandardCopyOption.REPLACE_EXISTING);
+            Log.summary("Saved metadata cache of " + order.length + " files to " + path);
+        } catch (IOException e) {
+            Log.error("Failed to replace the metadata cache: " + path + ", error: " + e);
+        }
+    }
+
+    /** 64 bit FNV-1a hash */
+    static long hash(@NotNull String value) {
+        long hash = 0xcbf29ce484222325L;
+        for (int ind = 0; ind < value.length(); ind++) {
+            char c = value.charAt(ind);
+            hash = (hash ^ (c & 0xFF)) * 0x100000001b3L;
+            hash = (hash ^ (c >>> 8)) * 0x100000001b3L;
+        }
+        return hash;
+    }
+
+    @Override
+    public synchronized void close() {
+        if (channel == null) return;
+        try {
+            channel.close();
+        } catch (IOException e) {
+            Log.error("Failed to close the metadata cache: " + path + ", error: " + e);
+        }
+        channel = null;
+        fences = new long[0];
+        recordsCount = 0;
+        synchronized (blocks) {
+            blocks.clear();
+        }
+    }
+}
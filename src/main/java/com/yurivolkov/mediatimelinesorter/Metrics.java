@@ -0,0 +1,167 @@
+package com.yurivolkov.mediatimelinesorter;
+/*
+ * Copyright (c) 2017 yvolk (Yuri Volkov), http://yurivolkov.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Durations of phases of a run and counters of work done, reported at the end of the run
+ * as JSON or in the Prometheus text format
+ */
+public class Metrics {
+    public static final String FILES_SCANNED = "files_scanned";
+    public static final String STAT_CALLS = "stat_calls";
+    public static final String BYTES_READ = "bytes_read";
+    public static final String METADATA_CACHE_HITS = "metadata_cache_hits";
+    public static final String TIMELINES_SKIPPED = "timelines_skipped";
+    public static final String FILES_UNCHANGED = "files_unchanged";
+    public static final String RENAMES = "renames";
+    public static final String TIME_CHANGES = "time_changes";
+    public static final String FAILURES = "failures";
+    public static final String INVERSIONS = "inversions";
+    public static final String DUPLICATES = "duplicates";
+    public static final String LINKS = "links";
+    private static final String[] COUNTERS = {FILES_SCANNED, STAT_CALLS, BYTES_READ, METADATA_CACHE_HITS,
+            TIMELINES_SKIPPED, FILES_UNCHANGED, RENAMES, TIME_CHANGES, FAILURES, INVERSIONS,
+            DUPLICATES, LINKS};
+    private static final String PROMETHEUS_PREFIX = "media_timeline_sorter_";
+
+    private final Map<String, Long> phaseNanos = new LinkedHashMap<>();
+    private final Map<String, LongAdder> counters = new ConcurrentHashMap<>();
+
+    public Metrics() {
+        for (String counter : COUNTERS) {
+            counters.put(counter, new LongAdder());
+        }
+    }
+
+    /** Runs the phase and adds its duration, so a phase may run several times */
+    public <T> T time(@NotNull String phase, @NotNull Supplier<T> task) {
+        long startedAt = System.nanoTime();
+        try {
+            return task.get();
+        } finally {
+            long nanos = System.nanoTime() - startedAt;
+            synchronized (phaseNanos) {
+                phaseNanos.merge(phase, nanos, Long::sum);
+            }
+        }
+    }
+
+    public void time(@NotNull String phase, @NotNull Runnable task) {
+        time(phase, () -> {
+            task.run();
+            return null;
+        });
+    }
+
+    public void add(@NotNull String counter, long delta) {
+        counters.computeIfAbsent(counter, key -> new LongAdder()).add(delta);
+    }
+
+    public long get(@NotNull String counter) {
+        LongAdder adder = counters.get(counter);
+        return adder == null ? 0 : adder.sum();
+    }
+
+    public double getSeconds(@NotNull String phase) {
+        synchronized (phaseNanos) {
+            return phaseNanos.getOrDefault(phase, 0L) / 1e9;
+        }
+    }
+
+    /** Phases in the order they were run first */
+    private Map<String, Double> getPhaseSeconds() {
+        Map<String, Double> seconds = new LinkedHashMap<>();
+        synchronized (phaseNanos) {
+            phaseNanos.forEach((phase, nanos) -> seconds.put(phase, nanos / 1e9));
+        }
+        return seconds;
+    }
+
+    private Map<String, Long> getCounters() {
+        Map<String, Long> values = new LinkedHashMap<>();
+        for (String counter : COUNTERS) {
+            values.put(counter, get(counter));
+        }
+        counters.keySet().stream().sorted().forEach(counter -> values.putIfAbsent(counter, get(counter)));
+        return values;
+    }
+
+    /** One line for the log */
+    @NotNull
+    public String toSummary() {
+        StringBuilder builder = new StringBuilder("Phases:");
+        getPhaseSeconds().forEach((phase, seconds) -> builder.append(' ').append(phase).append('=')
+                .append(String.format(Locale.ROOT, "%.3fs", seconds)));
+        builder.append("; counters:");
+        getCounters().forEach((counter, value) -> builder.append(' ').append(counter).append('=').append(value));
+        return builder.toString();
+    }
+
+    @NotNull
+    public String toJson() {
+        StringBuilder builder = new StringBuilder("{\n  \"phases_seconds\": {");
+        String separator = "\n";
+        for (Map.Entry<String, Double> entry : getPhaseSeconds().entrySet()) {
+            builder.append(separator).append("    \"").append(entry.getKey()).append("\": ")
+                    .append(String.format(Locale.ROOT, "%.6f", entry.getValue()));
+            separator = ",\n";
+        }
+        builder.append("\n  },\n  \"counters\": {");
+        separator = "\n";
+        for (Map.Entry<String, Long> entry : getCounters().entrySet()) {
+            builder.append(separator).append("    \"").append(entry.getKey()).append("\": ").append(entry.getValue());
+            separator = ",\n";
+        }
+        return builder.append("\n  }\n}\n").toString();
+    }
+
+    /** Gauges for the node exporter's textfile collector */
+    @NotNull
+    public String toPrometheus() {
+        StringBuilder builder = new StringBuilder();
+        String phaseMetric = PROMETHEUS_PREFIX + "phase_seconds";
+        builder.append("# TYPE ").append(phaseMetric).append(" gauge\n");
+        getPhaseSeconds().forEach((phase, seconds) -> builder.append(phaseMetric).append("{phase=\"").append(phase)
+                .append("\"} ").append(String.format(Locale.ROOT, "%.6f", seconds)).append('\n'));
+        getCounters().forEach((counter, value) -> builder.append("# TYPE ").append(PROMETHEUS_PREFIX).append(counter)
+                .append(" gauge\n").append(PROMETHEUS_PREFIX).append(counter).append(' ').append(value).append('\n'));
+        return builder.toString();
+    }
+
+    /** The Prometheus text format for a ".prom" file, JSON otherwise */
+    public void write(@NotNull Path path) {
+        String report = path.getFileName().toString().endsWith(".prom") ? toPrometheus() : toJson();
+        try {
+            Files.write(path, report.getBytes(StandardCharsets.UTF_8));
+            Log.summary("Saved the run report to " + path);
+        } catch (IOException e) {
+            Log.error("Failed to write the run report: " + path + ", error: " + e);
+        }
+    }
+}
@@ -0,0 +1,137 @@
+package com.yurivolkov.mediatimelinesorter;
+/*
+ * Copyright (c) 2017 yvolk (Yuri Volkov), http://yurivolkov.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Arrays;
+
+/**
+ * Assigns global orders to files, sorted chronologically.
+ * Dense numbering is 1, 2, 3...
+ * Gapped numbering leaves gaps of the {@link #step} between new numbers and keeps existing global orders,
+ * which are still in the increasing order, so a file, added later, is inserted into a gap,
+ * and only that file is renamed.
+ */
+public class Numbering {
+    public static final int DEFAULT_STEP = 10;
+    public static final Numbering DENSE = new Numbering(false, 1);
+
+    final boolean keepExisting;
+    final int step;
+
+    private Numbering(boolean keepExisting, int step) {
+        this.keepExisting = keepExisting;
+        this.step = step;
+    }
+
+    public static Numbering gapped(int step) {
+        return new Numbering(true, Math.max(1, step));
+    }
+
+    /**
+     * @param existingOrders global orders of files in their chronological order, 0 for no global order
+     * @return new global orders in the same order
+     */
+    @NotNull
+    public long[] assign(@NotNull long[] existingOrders) {
+        long[] orders = new long[existingOrders.length];
+        if (!keepExisting) {
+            for (int ind = 0; ind < orders.length; ind++) {
+                orders[ind] = ind + 1;
+            }
+            return orders;
+        }
+
+        boolean[] kept = longestIncreasing(existingOrders);
+        long last = 0;
+        int indPendingFrom = 0;
+        for (int ind = 0; ind < orders.length; ind++) {
+            if (!kept[ind]) continue;
+
+            long order = existingOrders[ind];
+            int pendingCount = ind - indPendingFrom;
+            if (order - last - 1 >= pendingCount) {
+                long gap = Math.min(step, (order - last) / (pendingCount + 1));
+                for (int ind2 = indPendingFrom; ind2 < ind; ind2++) {
+                    last += gap;
+                    orders[ind2] = last;
+                }
+                orders[ind] = order;
+                last = order;
+                indPendingFrom = ind + 1;
+            }
+            // else: No room for files before it, so this file is renumbered also
+        }
+        for (int ind2 = indPendingFrom; ind2 < orders.length; ind2++) {
+            last += step;
+            orders[ind2] = last;
+        }
+        return orders;
+    }
+
+    /**
+     * Marks positive orders, which form the longest strictly increasing subsequence, O(N log N)
+     */
+    static boolean[] longestIncreasing(long[] values) {
+        // Index of the last element of the best subsequence of each length
+        int[] tails = new int[values.length];
+        int[] previous = new int[values.length];
+        int length = 0;
+        for (int ind = 0; ind < values.length; ind++) {
+            if (values[ind] <= 0) continue;
+
+            int low = 0;
+            int high = length;
+            while (low < high) {
+                int middle = (low + high) >>> 1;
+                if (values[tails[middle]] < values[ind]) {
+                    low = middle + 1;
+                } else {
+                    high = middle;
+                }
+            }
+            previous[ind] = low > 0 ? tails[low - 1] : -1;
+            tails[low] = ind;
+            if (low == length) {
+                length++;
+            }
+        }
+        boolean[] kept = new boolean[values.length];
+        for (int ind = length > 0 ? tails[length - 1] : -1; ind >= 0; ind = previous[ind]) {
+            kept[ind] = true;
+        }
+        return kept;
+    }
+
+    /**
+     * @param existingNDigits the widest existing global order. Gapped numbering doesn't make it narrower
+     *                        to avoid renaming of all files
+     */
+    public int calcNDigits(@NotNull long[] orders, int existingNDigits) {
+        long max = Arrays.stream(orders).max().orElse(0);
+        int nDigits = Math.max(1, String.valueOf(max).length());
+        if (!keepExisting) {
+            return orders.length == 0 ? 0 : nDigits;
+        }
+        return Math.max(nDigits, existingNDigits);
+    }
+
+    @Override
+    public String toString() {
+        return keepExisting ? "gapped, step " + step : "dense";
+    }
+}
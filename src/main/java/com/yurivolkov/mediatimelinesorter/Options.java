@@ -0,0 +1,215 @@
+package com.yurivolkov.mediatimelinesorter;
+/*
+ * Copyright (c) 2017 yvolk (Yuri Volkov), http://yurivolkov.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Command line options, e.g. "--parallelism=4", and root directories to process
+ */
+public class Options {
+    /** Directories to process. The current directory, if none were specified */
+    public final List<Path> roots = new ArrayList<>();
+    /** Process subdirectories of the roots also */
+    public boolean recursive = false;
+    /** Keep files in the compact {@link FileTable} instead of {@link MediaFile} objects */
+    public boolean compact = false;
+    /** Store {@link ScanState} in the first root and skip timelines, which didn't change since the previous run */
+    public boolean state = false;
+    @NotNull
+    public Numbering numbering = Numbering.DENSE;
+    /** Read time, embedded into media files, e.g. EXIF "Date Taken" */
+    public boolean readMetadata = false;
+    /** Metrics of the run are written to this file: in the Prometheus text format for ".prom", JSON otherwise */
+    @Nullable
+    public Path report = null;
+    /** Write changes to this plan file instead of applying them, see {@link ChangePlan} */
+    @Nullable
+    public Path plan = null;
+    /** Link files under their new names in this directory instead of renaming them, see {@link ViewBuilder} */
+    @Nullable
+    public Path view = null;
+    /** Apply changes from this plan file to the roots, without scanning them */
+    @Nullable
+    public Path apply = null;
+    /** After the run, keep watching the roots for new files, see {@link TimelineWatcher} */
+    public boolean watch = false;
+    /** Spill scanned files to sorted run files in this directory, see {@link ExternalSorter} */
+    @Nullable
+    public Path external = null;
+    /** Look for files with the same contents, see {@link DuplicateFinder} */
+    @Nullable
+    public DuplicateFinder.Mode duplicates = null;
+    /** Estimate offsets of device clocks, see {@link ClockOffsetEstimator} */
+    @Nullable
+    public ClockOffsetEstimator.Mode clockOffsets = null;
+    /** Key of the timeline with the right clock */
+    @Nullable
+    public String referenceKey = null;
+    /** What to do with inversions of firm times, see {@link TimelineValidator} */
+    @NotNull
+    public TimelineValidator.OnConflict onConflict = TimelineValidator.OnConflict.STOP;
+    @NotNull
+    public Log.Level logLevel = Log.Level.CHANGES;
+    /** Number of threads used to scan files. 1 means: scan in the calling thread */
+    public int parallelism = Runtime.getRuntime().availableProcessors();
+
+    public static Options parse(@NotNull String[] args) {
+        Options options = new Options();
+        for (String arg : args) {
+            if (!arg.startsWith("--")) {
+                options.roots.add(Paths.get(arg));
+                continue;
+            }
+            String name = optionName(arg);
+            String value = optionValue(arg);
+            switch (name) {
+                case "--parallelism":
+                    options.parallelism = Math.max(1, Integer.parseInt(value));
+                    break;
+                case "--recursive":
+                    options.recursive = true;
+                    break;
+                case "--compact":
+                    options.compact = true;
+                    break;
+                case "--state":
+                    options.state = true;
+                    break;
+                case "--numbering":
+                    switch (value) {
+                        case "dense":
+                            options.numbering = Numbering.DENSE;
+                            break;
+                        case "gapped":
+                            options.numbering = Numbering.gapped(Numbering.DEFAULT_STEP);
+                            break;
+                        default:
+                            options.numbering = Numbering.gapped(Integer.parseInt(value));
+                            break;
+                    }
+                    break;
+                case "--read-metadata":
+                    options.readMetadata = true;
+                    break;
+                case "--plan":
+                    options.plan = Paths.get(value);
+                    break;
+                case "--view":
+                    options.view = Paths.get(value);
+                    break;
+                case "--apply":
+                    options.apply = Paths.get(value);
+                    break;
+                case "--watch":
+                    options.watch = true;
+                    break;
+                case "--external":
+                    options.external = Paths.get(value.isEmpty() ? System.getProperty("java.io.tmpdir") : value);
+                    break;
+                case "--duplicates":
+                    options.duplicates = DuplicateFinder.Mode.valueOf(value.toUpperCase());
+                    break;
+                case "--clock-offsets":
+                    options.clockOffsets = ClockOffsetEstimator.Mode.valueOf(value.toUpperCase());
+                    break;
+                case "--reference":
+                    options.referenceKey = value;
+                    break;
+                case "--conflicts":
+                    options.onConflict = TimelineValidator.OnConflict.valueOf(value.toUpperCase());
+                    break;
+                case "--log":
+                    options.logLevel = Log.Level.valueOf(value.toUpperCase());
+                    break;
+                case "--report":
+                    options.report = Paths.get(value);
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown argument: " + arg);
+            }
+        }
+        if (options.roots.isEmpty()) {
+            options.roots.add(Paths.get(""));
+        }
+        options.validate();
+        return options;
+    }
+
+    /** Options, which don't work together, are rejected instead of being ignored */
+    private void validate() {
+        if (apply != null) {
+            // The plan is applied without scanning, so options of the scan and of other outputs have no effect
+            rejectCombination("--apply", "--plan", plan != null);
+            rejectCombination("--apply", "--view", view != null);
+            rejectCombination("--apply", "--watch", watch);
+            rejectCombination("--apply", "--external", external != null);
+            rejectCombination("--apply", "--compact", compact);
+            rejectCombination("--apply", "--state", state);
+            rejectCombination("--apply", "--read-metadata", readMetadata);
+            rejectCombination("--apply", "--duplicates", duplicates != null);
+            rejectCombination("--apply", "--clock-offsets", clockOffsets != null);
+        }
+        if (external != null) {
+            rejectCombination("--external", "--plan", plan != null);
+            rejectCombination("--external", "--state", state);
+            rejectCombination("--external", "--watch", watch);
+            rejectCombination("--external", "--duplicates", duplicates != null);
+            rejectCombination("--external", "--clock-offsets", clockOffsets != null);
+            rejectCombination("--external", "--view", view != null);
+            rejectCombination("--external", "--compact", compact);
+        }
+        if (plan != null) {
+            rejectCombination("--plan", "--view", view != null);
+            rejectCombination("--plan", "--watch", watch);
+            rejectCombination("--plan", "--state", state);
+        }
+        if (clockOffsets == ClockOffsetEstimator.Mode.APPLY) {
+            // Files, changed by the run, are refreshed from the disk without their offsets
+            rejectCombination("--clock-offsets=apply", "--watch", watch);
+        }
+        if (compact) {
+            rejectCombination("--compact", "--state", state);
+            rejectCombination("--compact", "--watch", watch);
+            rejectCombination("--compact", "--duplicates", duplicates != null);
+        }
+        if (view != null) {
+            rejectCombination("--view", "--watch", watch);
+        }
+    }
+
+    private static void rejectCombination(String option, String otherOption, boolean combined) {
+        if (combined) {
+            throw new IllegalArgumentException(option + " can't be combined with " + otherOption);
+        }
+    }
+
+    private static String optionName(String arg) {
+        int ind = arg.indexOf('=');
+        return ind < 0 ? arg : arg.substring(0, ind);
+    }
+
+    private static String optionValue(String arg) {
+        int ind = arg.indexOf('=');
+        return ind < 0 ? "" : arg.substring(ind + 1);
+    }
+}
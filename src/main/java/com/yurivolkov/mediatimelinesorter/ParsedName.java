@@ -21,27 +21,62 @@ import java.text.ParseException;
 import java.text.SimpleDateFormat;
 import java.util.Date;
 
+/**
+ * Parses a file name in one pass over its chars, without intermediate substrings, e.g.
+ * "0125-yv015-VID_20200718_210725000.mp4" has global order 125, source key "yv", source order 15
+ * and time, parsed from the name
+ */
 public class ParsedName {
+    /** Length of "yyyyMMdd_HHmmssSSS" */
+    private static final int TIME_LENGTH = 18;
+    /** Earlier dates are in the Julian calendar, so we leave them to {@link SimpleDateFormat} */
+    private static final int MIN_GREGORIAN_YEAR = 1600;
+    /** Longer numbers may not fit into long */
+    private static final int MAX_DIGITS_TO_ACCUMULATE = 18;
+
     @NotNull
     public final String name;
     public final long globalOrder;
     private final int indPermanentFileNamePart;
     @NotNull
     public final String sourceKey;
+    /** Index of the char after the source timeline order, -1 if there is no source timeline */
+    private final int indAfterSourceTimelineOrder;
     public final long sourceOrder;
-    @NotNull
-    public final String extension;
+    /** Index of the last '.', -1 if there is no extension */
+    private final int indExtension;
     /** 0 if failed to parse */
     public final long parsedTime;
 
     private ParsedName(@NotNull String name) {
         this.name = name;
-        globalOrder = calcGlobalOrder();
-        indPermanentFileNamePart = calcPermanentFileNamePart();
-        sourceKey = calcSourceTimelineKey();
-        sourceOrder = calcSourceTimelineOrder();
-        extension = calcExtension();
-        parsedTime = parseTimeFromName();
+        final int length = name.length();
+
+        // Global order is a number, followed by "-"
+        int ind = skipDigits(name, 0);
+        boolean minusAfterDigits = ind < length && name.charAt(ind) == '-';
+        globalOrder = minusAfterDigits && ind > 0 ? parseLong(name, 0, ind) : 0;
+        indPermanentFileNamePart = minusAfterDigits && length > ind + 1 ? ind + 1 : 0;
+
+        // Source timeline key is followed by its order number
+        ind = indPermanentFileNamePart;
+        while (ind < length && isValidTimelineKeyChar(name.charAt(ind))) {
+            ind++;
+        }
+        if (ind > indPermanentFileNamePart && ind < length && isDigit(name.charAt(ind))) {
+            sourceKey = name.substring(indPermanentFileNamePart, ind);
+            indAfterSourceTimelineOrder = skipDigits(name, ind);
+            sourceOrder = parseLong(name, ind, indAfterSourceTimelineOrder);
+        } else {
+            sourceKey = "";
+            indAfterSourceTimelineOrder = -1;
+            sourceOrder = 0;
+        }
+
+        indExtension = name.lastIndexOf('.');
+
+        int indTimeFrom = Math.max(indAfterSourceTimelineOrder, 0);
+        parsedTime = parseTimeFromName(name, indTimeFrom, indExtension >= indTimeFrom ? indExtension : length);
     }
 
     public static ParsedName parse(@NotNull String name) {
@@ -52,134 +87,141 @@ public class ParsedName {
         return sourceKey.length() > 0;
     }
 
-    public String getPermanentNamePart() {
-        return name.substring(indPermanentFileNamePart);
+    /** @return number of chars in the global order, 0 if there is no global order */
+    public int getGlobalOrderLength() {
+        return globalOrder > 0 ? indPermanentFileNamePart - 1 : 0;
     }
 
-    private long calcGlobalOrder() {
-        int ind = 0;
-        while (isDigit(name, ind)) {
-            ind++;
-        }
-        if (isMinus(name, ind) && ind > 0) {
-            return Long.parseLong(name.substring(0, ind));
-        }
-        return 0;
+    /** Substrings are built on demand, as most names are parsed for their numbers only */
+    @NotNull
+    public String getPermanentNamePart() {
+        return name.substring(indPermanentFileNamePart);
     }
 
-    private int calcPermanentFileNamePart() {
-        int ind = 0;
-        while (isDigit(name, ind)) {
-            ind++;
-        }
-        if (isMinus(name, ind) && name.length() > ind + 1) {
-            return ind + 1;
-        }
-        return 0;
+    @NotNull
+    public String getExtension() {
+        return indExtension >= 0 ? name.substring(indExtension + 1) : "";
     }
 
-    private String calcSourceTimelineKey() {
-        int ind = indPermanentFileNamePart;
-        while (isValidTimelineKeyChar(name, ind)) {
+    private static int skipDigits(String name, int ind) {
+        while (ind < name.length() && isDigit(name.charAt(ind))) {
             ind++;
         }
-        if (isDigit(name, ind) && ind > indPermanentFileNamePart) {
-            return name.substring(indPermanentFileNamePart, ind);
-        }
-        return "";
+        return ind;
     }
 
-    private long calcSourceTimelineOrder() {
-        int ind = indAfterSourceTimelineOrder();
-        if (ind >= 0) {
-            int indStart = indPermanentFileNamePart + sourceKey.length();
-            return indStart < ind ? Long.parseLong(name.substring(indStart, ind)) : 0;
+    private static long parseLong(String name, int from, int to) {
+        if (to - from > MAX_DIGITS_TO_ACCUMULATE) {
+            return Long.parseLong(name.substring(from, to));
         }
-        return 0;
-    }
-
-    private int indAfterSourceTimelineOrder() {
-        if (hasSourceTimeline()) {
-            int indStart = indPermanentFileNamePart + sourceKey.length();
-            int ind = indStart;
-            while (isDigit(name, ind)) {
-                ind++;
-            }
-            return ind;
+        long value = 0;
+        for (int ind = from; ind < to; ind++) {
+            value = value * 10 + (name.charAt(ind) - '0');
         }
-        return -1;
+        return value;
     }
 
-    private String calcExtension() {
-        int indStart = name.lastIndexOf('.');
-        if (indStart >= 0 && name.length() >= indStart) {
-            return name.substring(indStart + 1);
-        }
-        return "";
+    private static boolean isValidTimelineKeyChar(char c) {
+        return !isDigit(c) && c != '-';
     }
 
-    private boolean isValidTimelineKeyChar(String name, int ind) {
-        if (name == null || name.length() <= ind) {
-            return false;
-        }
-        return !isDigit(name, ind) && !isMinus(name, ind);
+    static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
     }
 
     static boolean isDigit(String name, int ind) {
         if (name == null || name.length() <= ind || ind < 0) {
             return false;
         }
-        return "0123456789".contains(name.substring(ind, ind + 1));
+        return isDigit(name.charAt(ind));
     }
 
     static boolean isMinus(String name, int ind) {
-        if (name == null || name.length() <= ind) {
+        if (name == null || name.length() <= ind || ind < 0) {
             return false;
         }
-        return "-".contentEquals(name.substring(ind, ind + 1));
+        return name.charAt(ind) == '-';
     }
 
     /**
+     * Time, e.g. from VID_20200718_210725000.mp4, is searched for from the first digit
+     * till "-" or "." or the end of the range
      * @return 0 if failed to parse
      */
-    private long parseTimeFromName() {
-        // e.g. from VID_20200718_210725.mp4
-        String name = dropExtension(getNameAfterSourceTimelineOrder());
-        int ind = -1;
-        while (!isDigit(name, ind + 1) && ind < name.length()) {
-            ind++;
+    private static long parseTimeFromName(String name, int from, int to) {
+        int indStart = from;
+        while (indStart < to && !isDigit(name.charAt(indStart))) {
+            indStart++;
         }
-        if (!isDigit(name, ind+1)) return 0;
+        if (indStart >= to) return 0;
 
-        String toParse = name.substring(ind + 1);
-        if (toParse.contains("-")) {
-            toParse = toParse.substring(0, toParse.indexOf("-"));
-        }
-        if (toParse.contains(".")) {
-            toParse = toParse.substring(0, toParse.indexOf("."));
+        int indEnd = indStart;
+        while (indEnd < to && name.charAt(indEnd) != '-' && name.charAt(indEnd) != '.') {
+            indEnd++;
         }
-        String pattern;
-        if (toParse.length() == 18) {
-            // Milliseconds in a file name are in UTC, not in current time zone ?!
-            toParse = toParse + "+00";
-            pattern = "yyyyMMdd_HHmmssSSSX";
-        } else {
-            pattern = "yyyyMMdd_HHmmss";
-            // local time in unknown time zone. We better not parse it at all
+        if (indEnd - indStart != TIME_LENGTH) {
+            // E.g. "yyyyMMdd_HHmmss" is a local time in unknown time zone. We better not parse it at all
             return 0;
         }
-        SimpleDateFormat format = new SimpleDateFormat(pattern);
+        // Milliseconds in a file name are in UTC, not in current time zone ?!
+        long time = decodeUtcTime(name, indStart);
+        return time == Long.MIN_VALUE
+                ? parseUtcTimeWithFormat(name.substring(indStart, indEnd))
+                : time;
+    }
+
+    /**
+     * Arithmetic decoding of "yyyyMMdd_HHmmssSSS" in UTC. Out of range values roll over
+     * the same way as in the lenient {@link SimpleDateFormat}
+     * @return Long.MIN_VALUE if the chars should be parsed by {@link SimpleDateFormat}
+     */
+    private static long decodeUtcTime(String name, int ind) {
+        for (int i = 0; i < TIME_LENGTH; i++) {
+            char c = name.charAt(ind + i);
+            if (i == 8 ? c != '_' : !isDigit(c)) {
+                return Long.MIN_VALUE;
+            }
+        }
+        int year = (int) parseLong(name, ind, ind + 4);
+        if (year < MIN_GREGORIAN_YEAR) {
+            return Long.MIN_VALUE;
+        }
+        int monthIndex = (int) parseLong(name, ind + 4, ind + 6) - 1;
+        year += Math.floorDiv(monthIndex, 12);
+        int month = Math.floorMod(monthIndex, 12) + 1;
+        long days = daysFromEpoch(year, month) + parseLong(name, ind + 6, ind + 8) - 1;
+        long seconds = days * 86400
+                + parseLong(name, ind + 9, ind + 11) * 3600
+                + parseLong(name, ind + 11, ind + 13) * 60
+                + parseLong(name, ind + 13, ind + 15);
+        return seconds * 1000 + parseLong(name, ind + 15, ind + 18);
+    }
+
+    /** Days from 1970-01-01 till the first day of the month in the proleptic Gregorian calendar */
+    private static long daysFromEpoch(int year, int month) {
+        // Years start in March, so the leap day is the last day of a year
+        int y = month <= 2 ? year - 1 : year;
+        int era = Math.floorDiv(y, 400);
+        int yearOfEra = y - era * 400;
+        int dayOfYear = (153 * (month + (month > 2 ? -3 : 9)) + 2) / 5;
+        int dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+        return era * 146097L + dayOfEra - 719468;
+    }
+
+    /** @return 0 if failed to parse */
+    private static long parseUtcTimeWithFormat(String toParse) {
+        SimpleDateFormat format = new SimpleDateFormat("yyyyMMdd_HHmmssSSSX");
         try {
-            return format.parse(toParse).getTime();
+            return format.parse(toParse + "+00").getTime();
         } catch (ParseException e) {
             return 0;
         }
     }
 
     public String getNameAfterSourceTimelineOrder() {
-        int ind = indAfterSourceTimelineOrder();
+        int ind = indAfterSourceTimelineOrder;
         if (ind >= 0) {
-            return name.substring(ind + (name.charAt(ind) == '-' ? 1 : 0));
+            return name.substring(ind + (isMinus(name, ind) ? 1 : 0));
         }
         return name;
     }
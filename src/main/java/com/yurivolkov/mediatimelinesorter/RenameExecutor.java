@@ -0,0 +1,228 @@
+package com.yurivolkov.mediatimelinesorter;
+/*
+ * Copyright (c) 2017 yvolk (Yuri Volkov), http://yurivolkov.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+/**
+ * Applies the whole set of {@link FileChange}s in one pass:
+ * renames are planned together, so a file is moved only after the file, holding its new name, moved away.
+ * Cycles of renames are broken by moving one of the files to a temporary name.
+ * Independent renames, and then time changes, are done in parallel batches,
+ * when invoked in a {@link java.util.concurrent.ForkJoinPool}.
+ */
+public class RenameExecutor {
+    /** Prepended to a permanent name part for a temporary name, it's parsed as the global order 0 */
+    private static final String TEMP_NAME_PREFIX = "0-";
+
+    public static class Result {
+        public final int savedCount;
+        public final int failedCount;
+        public final int renamedCount;
+        public final int timeChangedCount;
+        /** The changes, which were executed */
+        @NotNull
+        public final List<FileChange> changes;
+        /** Sources of the changes, which were saved completely, so these files are on disk as changed */
+        @NotNull
+        public final Set<Path> savedSources;
+
+        Result(int savedCount, int failedCount, int renamedCount, int timeChangedCount,
+               @NotNull List<FileChange> changes, @NotNull Set<Path> savedSources) {
+            this.savedCount = savedCount;
+            this.failedCount = failedCount;
+            this.renamedCount = renamedCount;
+            this.timeChangedCount = timeChangedCount;
+            this.changes = changes;
+            this.savedSources = savedSources;
+        }
+    }
+
+    private static class Move {
+        final FileChange change;
+        final Path target;
+        /** Changes, when the file is moved to a temporary name */
+        Path source;
+        boolean failed = false;
+
+        Move(FileChange change) {
+            this.change = change;
+            source = change.source.toAbsolutePath().normalize();
+            target = change.getTarget().toAbsolutePath().normalize();
+        }
+    }
+
+    @NotNull
+    public Result execute(@NotNull List<FileChange> changes) {
+        List<Move> moves = changes.stream().map(Move::new).collect(Collectors.toList());
+        moves.parallelStream().forEach(move -> {
+            if (!MediaFile.exists(move.source)) {
+                Log.error("Source doesn't exist: " + move.source);
+                move.failed = true;
+            }
+        });
+
+        // Renames, which are not done yet, by their current source
+        Map<Path, Move> pending = new LinkedHashMap<>();
+        Set<Path> targets = new HashSet<>();
+        for (Move move : moves) {
+            if (move.failed || !move.change.nameChanged()) continue;
+
+            if (targets.add(move.target)) {
+                pending.put(move.source, move);
+            } else {
+                Log.error("Duplicated target for: " + move.source + ", target: " + move.target);
+                move.failed = true;
+            }
+        }
+        // A rename, waiting for the file, holding its target name, to move away
+        Map<Path, Move> waitingFor = new HashMap<>();
+        List<Move> ready = new ArrayList<>();
+        for (Move move : pending.values()) {
+            if (pending.containsKey(move.target)) {
+                waitingFor.put(move.target, move);
+            } else {
+                ready.add(move);
+            }
+        }
+        while (!pending.isEmpty()) {
+            if (ready.isEmpty()) {
+                // Only cycles are left
+                Move move = pending.values().iterator().next();
+                Path source = move.source;
+                pending.remove(source);
+                moveToTemporaryName(move);
+                if (move.failed) {
+                    failWaiting(source, waitingFor, pending);
+                } else {
+                    pending.put(move.source, move);
+                    Move waiting = waitingFor.remove(source);
+                    if (waiting != null) {
+                        ready.add(waiting);
+                    }
+                }
+                continue;
+            }
+            ready.parallelStream().forEach(RenameExecutor::rename);
+            List<Move> nextReady = new ArrayList<>();
+            for (Move move : ready) {
+                pending.remove(move.source);
+                if (move.failed) {
+                    failWaiting(move.source, waitingFor, pending);
+                } else {
+                    Move waiting = waitingFor.remove(move.source);
+                    if (waiting != null) {
+                        nextReady.add(waiting);
+                    }
+                }
+            }
+            ready = nextReady;
+        }
+
+        int renamedCount = (int) moves.stream().filter(move -> !move.failed && move.change.nameChanged()).count();
+        AtomicInteger savedCount = new AtomicInteger();
+        AtomicInteger timeChangedCount = new AtomicInteger();
+        moves.parallelStream().forEach(move -> {
+            if (move.failed) return;
+
+            if (!move.change.timeChanged()) {
+                savedCount.incrementAndGet();
+            } else if (setTime(move)) {
+                savedCount.incrementAndGet();
+                timeChangedCount.incrementAndGet();
+            }
+        });
+        int failedCount = (int) moves.stream().filter(move -> move.failed).count();
+        Set<Path> savedSources = moves.stream().filter(move -> !move.failed).map(move -> move.change.source)
+                .collect(Collectors.toSet());
+        return new Result(savedCount.get(), failedCount, renamedCount, timeChangedCount.get(), changes, savedSources);
+    }
+
+    /** The file, holding the target name of the rename, couldn't be moved away */
+    private static void failWaiting(Path source, Map<Path, Move> waitingFor, Map<Path, Move> pending) {
+        Move waiting = waitingFor.remove(source);
+        while (waiting != null) {
+            Log.error("Target exists for: " + waiting.source + ", target: " + waiting.target);
+            waiting.failed = true;
+            pending.remove(waiting.source);
+            waiting = waitingFor.remove(waiting.source);
+        }
+    }
+
+    private static void rename(Move move) {
+        if (MediaFile.exists(move.target)) {
+            Log.error("Target exists for: " + move.source + ", target: " + move.target);
+            move.failed = true;
+            return;
+        }
+        String msgLog = "Renaming " + move.source.getFileName() + " to " + move.target.getFileName();
+        try {
+            Files.move(move.source, move.target);
+            Log.change(msgLog);
+        } catch (IOException e) {
+            Log.error(msgLog + ", error:" + e.getMessage());
+            move.failed = true;
+        }
+    }
+
+    private static void moveToTemporaryName(Move move) {
+        String permanentNamePart = ParsedName.parse(move.source.getFileName().toString()).getPermanentNamePart();
+        String prefix = TEMP_NAME_PREFIX;
+        Path temporary = move.source.resolveSibling(prefix + permanentNamePart);
+        while (Files.exists(temporary)) {
+            prefix = "0" + prefix;
+            temporary = move.source.resolveSibling(prefix + permanentNamePart);
+        }
+        String msgLog = "Renaming " + move.source.getFileName() + " to temporary " + temporary.getFileName();
+        try {
+            Files.move(move.source, temporary);
+            Log.change(msgLog);
+            move.source = temporary;
+        } catch (IOException e) {
+            Log.error(msgLog + ", error:" + e.getMessage());
+            move.failed = true;
+        }
+    }
+
+    private static boolean setTime(Move move) {
+        Path path = move.change.nameChanged() ? move.target : move.source;
+        String msgLog = "Changing time of " + path.getFileName() + " to " + new Date(move.change.fileTime);
+        try {
+            Files.setLastModifiedTime(path, FileTime.fromMillis(move.change.fileTime));
+            Log.change(msgLog);
+            return true;
+        } catch (IOException e) {
+            Log.error(msgLog + ", error:" + e.getMessage());
+            move.failed = true;
+            return false;
+        }
+    }
+}
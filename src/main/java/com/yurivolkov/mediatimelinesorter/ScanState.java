@@ -0,0 +1,164 @@
+package com.yurivolkov.mediatimelinesorter;
+/*
+ * Copyright (c) 2017 yvolk (Yuri Volkov), http://yurivolkov.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * State of files after the previous run, stored in a compact binary file in the processed directory.
+ * Files are identified by their permanent name part, size and time.
+ * A timeline, which files didn't change since the previous run, doesn't need to be fixed again.
+ */
+public class ScanState {
+    public static final String FILE_NAME = Sorter.SERVICE_FILE_PREFIX + "state";
+    private static final int MAGIC = 0x4D545353;
+    private static final int VERSION = 1;
+
+    private final Path path;
+    private final Map<String, Entry> entries = new HashMap<>();
+    private final Map<String, Integer> timelineSizes = new HashMap<>();
+
+    private static class Entry {
+        final String sourceKey;
+        final long size;
+        final long fileTime;
+
+        Entry(String sourceKey, long size, long fileTime) {
+            this.sourceKey = sourceKey;
+            this.size = size;
+            this.fileTime = fileTime;
+        }
+    }
+
+    private ScanState(Path path) {
+        this.path = path;
+    }
+
+    /** @return empty state, if there is no state file or it cannot be read */
+    public static ScanState load(@NotNull Path dir) {
+        ScanState state = new ScanState(dir.resolve(FILE_NAME));
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(state.path)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                Log.error("Unknown format of the state file: " + state.path);
+                return state;
+            }
+            List<String> keys = new ArrayList<>();
+            int keysCount = in.readInt();
+            for (int ind = 0; ind < keysCount; ind++) {
+                keys.add(in.readUTF());
+            }
+            int entriesCount = in.readInt();
+            for (int ind = 0; ind < entriesCount; ind++) {
+                String permanentNamePart = in.readUTF();
+                String sourceKey = keys.get(in.readInt());
+                state.put(permanentNamePart, new Entry(sourceKey, in.readLong(), in.readLong()));
+            }
+            Log.summary("Loaded state of " + state.entries.size() + " files from " + state.path);
+        } catch (NoSuchFileException e) {
+            Log.summary("No state file yet: " + state.path);
+        } catch (IOException | RuntimeException e) {
+            Log.error("Failed to read the state file: " + state.path + ", error: " + e);
+            state.entries.clear();
+            state.timelineSizes.clear();
+        }
+        return state;
+    }
+
+    private void put(String permanentNamePart, Entry entry) {
+        entries.put(permanentNamePart, entry);
+        timelineSizes.merge(entry.sourceKey, 1, Integer::sum);
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * @return true if the timeline has the same files as after the previous run,
+     * with the same sizes and times
+     */
+    public boolean isUnchanged(@NotNull String sourceKey, @NotNull List<MediaFile> timeline) {
+        Integer size = timelineSizes.get(sourceKey);
+        if (size == null || size != timeline.size()) {
+            return false;
+        }
+        for (MediaFile file : timeline) {
+            Entry entry = entries.get(file.name.getPermanentNamePart());
+            if (entry == null || !entry.sourceKey.equals(sourceKey) || entry.size != file.getSize()
+                    || entry.fileTime != file.getFileTime()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Stores the state of files after changes were saved */
+    public void save(@NotNull List<MediaFile> files) {
+        entries.clear();
+        timelineSizes.clear();
+        for (MediaFile file : files) {
+            put(file.name.getPermanentNamePart(), new Entry(file.name.sourceKey, file.getSize(), file.getFileTime()));
+        }
+        Map<String, Integer> keyIds = new HashMap<>();
+        List<String> keys = new ArrayList<>();
+        for (Entry entry : entries.values()) {
+            if (!keyIds.containsKey(entry.sourceKey)) {
+                keyIds.put(entry.sourceKey, keys.size());
+                keys.add(entry.sourceKey);
+            }
+        }
+        Path tmpPath = path.resolveSibling(FILE_NAME + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmpPath)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(keys.size());
+            for (String key : keys) {
+                out.writeUTF(key);
+            }
+            out.writeInt(entries.size());
+            for (Map.Entry<String, Entry> mapEntry : entries.entrySet()) {
+                Entry entry = mapEntry.getValue();
+                out.writeUTF(mapEntry.getKey());
+                out.writeInt(keyIds.get(entry.sourceKey));
+                out.writeLong(entry.size);
+                out.writeLong(entry.fileTime);
+            }
+        } catch (IOException e) {
+            Log.error("Failed to write the state file: " + tmpPath + ", error: " + e);
+            return;
+        }
+        try {
+            Files.move(tmpPath, path, StandardCopyOption.REPLACE_EXISTING);
+            Log.summary("Saved state of " + entries.size() + " files to " + path);
+        } catch (IOException e) {
+            Log.error("Failed to replace the state file: " + path + ", error: " + e);
+        }
+    }
+}
@@ -1,184 +1,519 @@
 package com.yurivolkov.mediatimelinesorter;
 
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 import java.io.IOException;
-import java.nio.file.DirectoryIteratorException;
-import java.nio.file.DirectoryStream;
-import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
 
 public class Sorter {
-    final Path dir;
+    /** Names of files, created by the sorter itself, start with this prefix. These are not media files */
+    public static final String SERVICE_FILE_PREFIX = ".media-timeline-sorter-";
+
+    final List<Path> roots;
+    /** Also process files in subdirectories of the roots */
+    final boolean recursive;
+    /** Number of threads for parallel work */
+    final int parallelism;
+    /** State after the previous run, null if not used */
+    @Nullable
+    private ScanState scanState = null;
+    @NotNull
+    private Numbering numbering = Numbering.DENSE;
+    /** Don't look for duplicates, if null */
+    @Nullable
+    private DuplicateFinder.Mode duplicatesMode = null;
+    /** Don't estimate clock offsets, if null */
+    @Nullable
+    private ClockOffsetEstimator.Mode clockOffsetMode = null;
+    /** Key of the timeline, which clock is right. The timeline with the most firm files, if null */
+    @Nullable
+    private String referenceKey = null;
+    @NotNull
+    private TimelineValidator.OnConflict onConflict = TimelineValidator.OnConflict.STOP;
+    /** Read time, embedded into files, e.g. EXIF "Date Taken" */
+    private boolean readEmbeddedTime = false;
+    /** Cache of embedded times, null if not used */
+    @Nullable
+    private MetadataCache metadataCache = null;
+    /** Durations of phases and counters of the work done */
+    final Metrics metrics = new Metrics();
 
     public Sorter(@NotNull Path dir) {
-        this.dir = dir;
-        String s = dir.toAbsolutePath().toString();
-        System.out.println("Processing the directory: " + s);
+        this(dir, 1);
+    }
+
+    public Sorter(@NotNull Path dir, int parallelism) {
+        this(Collections.singletonList(dir), false, parallelism);
+    }
+
+    public Sorter(@NotNull List<Path> roots, boolean recursive, int parallelism) {
+        this.roots = roots;
+        this.recursive = recursive;
+        this.parallelism = Math.max(1, parallelism);
+        for (Path root : roots) {
+            String s = root.toAbsolutePath().toString();
+            Log.summary("Processing the directory: " + s + (recursive ? ", including subdirectories" : ""));
+        }
     }
 
+    public void setScanState(@Nullable ScanState scanState) {
+        this.scanState = scanState;
+    }
+
+    public void setNumbering(@NotNull Numbering numbering) {
+        this.numbering = numbering;
+    }
+
+    public void setDuplicatesMode(@Nullable DuplicateFinder.Mode duplicatesMode) {
+        this.duplicatesMode = duplicatesMode;
+    }
+
+    public void setClockOffsets(@Nullable ClockOffsetEstimator.Mode clockOffsetMode, @Nullable String referenceKey) {
+        this.clockOffsetMode = clockOffsetMode;
+        this.referenceKey = referenceKey;
+    }
+
+    public void setOnConflict(@NotNull TimelineValidator.OnConflict onConflict) {
+        this.onConflict = onConflict;
+    }
+
+    @NotNull
+    TimelineValidator newValidator() {
+        return new TimelineValidator(onConflict);
+    }
+
+    @NotNull
+    public Numbering getNumbering() {
+        return numbering;
+    }
+
+    public void setReadEmbeddedTime(boolean readEmbeddedTime) {
+        this.readEmbeddedTime = readEmbeddedTime;
+    }
+
+    public boolean isReadEmbeddedTime() {
+        return readEmbeddedTime;
+    }
+
+    public void setMetadataCache(@Nullable MetadataCache metadataCache) {
+        this.metadataCache = metadataCache;
+    }
+
+    static boolean isServiceFile(@NotNull String fileName) {
+        return fileName.startsWith(SERVICE_FILE_PREFIX);
+    }
+
+    /**
+     * Files of all roots are joined into one list. Attributes of each file are read once, in parallel.
+     * The order of files doesn't depend on the number of threads.
+     */
     public List<MediaFile> getFiles() {
-        List<MediaFile> files = new ArrayList<>();
-        try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir)) {
-            for (Path path: stream) {
-                if (Files.isRegularFile(path)) {
-                    MediaFile mediaFile = new MediaFile(path);
-                    files.add(mediaFile);
-                    System.out.println(mediaFile.toString());
+        return metrics.time("getFiles", () -> {
+            DirectoryScanner scanner = new DirectoryScanner(recursive, metrics);
+            List<MediaFile> files = inPool(() -> {
+                List<MediaFile> scanned = scanner.scan(roots);
+                if (readEmbeddedTime) {
+                    scanned.parallelStream().forEach(file ->
+                            metrics.add(Metrics.BYTES_READ, file.readEmbeddedTime(metadataCache)));
                 }
+                return scanned;
+            });
+            metrics.add(Metrics.FILES_SCANNED, files.size());
+            for (MediaFile mediaFile : files) {
+                Log.trace(mediaFile::toString);
             }
-        } catch (IOException | DirectoryIteratorException x) {
-            // IOException can never be thrown by the iteration.
-            // In this snippet, it can only be thrown by newDirectoryStream.
-            System.err.println(x);
-        }
-        return files;
+            if (metadataCache != null) {
+                metrics.add(Metrics.METADATA_CACHE_HITS, metadataCache.getHitCount());
+                Log.summary("Embedded times from the cache: " + metadataCache.getHitCount() +
+                        ", read from files: " + metadataCache.getMissCount());
+            }
+            return files;
+        });
     }
 
-    public void fixFileTime(List<MediaFile> files) {
-        List<String> timelineKeys = new ArrayList<>();
-        for (MediaFile file : files) {
-            if (!timelineKeys.contains(file.name.sourceKey)) {
-                timelineKeys.add(file.name.sourceKey);
+    /** Compact alternative to {@link #getFiles()} for huge archives */
+    public FileTable getFileTable() {
+        return metrics.time("getFiles", () -> {
+            FileTable table = inPool(() -> {
+                FileTable scanned = FileTable.scan(roots, recursive, metrics);
+                if (readEmbeddedTime) {
+                    scanned.readEmbeddedTimes(metrics);
+                }
+                return scanned;
+            });
+            metrics.add(Metrics.FILES_SCANNED, table.size());
+            Log.summary("Found " + table.size() + " files in " + table.timelineCount() + " timelines");
+            return table;
+        });
+    }
+
+    public Metrics getMetrics() {
+        return metrics;
+    }
+
+    /** Runs the task in a pool, limited by {@link #parallelism} */
+    <T> T inPool(Callable<T> task) {
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try {
+            return pool.submit(task).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
             }
-        }
-        for (String key : timelineKeys) {
-            fixTimeForOneTimeline(getSourceOrderedTimelineByKey(files, key));
+            throw new IllegalStateException(e.getCause());
+        } finally {
+            pool.shutdown();
         }
     }
 
-    @NotNull
-    private List<MediaFile> getSourceOrderedTimelineByKey(List<MediaFile> files, String key) {
-        List<MediaFile> timelineFiles = new ArrayList<>();
-        for (MediaFile file : files) {
-            if (key.equals(file.name.sourceKey)) {
-                timelineFiles.add(file);
+    /**
+     * Reports files with the same contents and, if configured, removes all files of each group but the first one
+     * from the list, so they are left as they are, see {@link DuplicateFinder}
+     */
+    public void findDuplicates(List<MediaFile> files) {
+        if (duplicatesMode == null) return;
+
+        findDuplicates(files, group -> true);
+    }
+
+    /**
+     * Finds duplicates of new files, e.g. copied while watching, among known files of the same sizes
+     * and the new files. Known files win, so only new files are removed from the list, if configured
+     */
+    public void findDuplicates(List<MediaFile> known, List<MediaFile> added) {
+        if (duplicatesMode == null || added.isEmpty()) return;
+
+        Set<Long> sizes = added.stream().map(MediaFile::getSize).collect(Collectors.toSet());
+        List<MediaFile> files = known.stream().filter(file -> sizes.contains(file.getSize()))
+                .collect(Collectors.toList());
+        files.addAll(added);
+        Set<MediaFile> addedSet = Collections.newSetFromMap(new IdentityHashMap<>());
+        addedSet.addAll(added);
+        findDuplicates(files, group -> group.stream().anyMatch(addedSet::contains));
+        Set<MediaFile> kept = Collections.newSetFromMap(new IdentityHashMap<>());
+        kept.addAll(files);
+        added.removeIf(file -> !kept.contains(file));
+    }
+
+    /** @param groupFilter groups of duplicates to report, e.g. only groups with new files */
+    private void findDuplicates(List<MediaFile> files, Predicate<List<MediaFile>> groupFilter) {
+        metrics.time("findDuplicates", () -> {
+            List<List<MediaFile>> groups = inPool(() -> new DuplicateFinder(metrics).find(files)).stream()
+                    .filter(groupFilter).collect(Collectors.toList());
+            Set<MediaFile> excluded = Collections.newSetFromMap(new IdentityHashMap<>());
+            int duplicatesCount = 0;
+            for (List<MediaFile> group : groups) {
+                Log.change("Duplicates: " + group.stream().map(file -> file.path.toString())
+                        .collect(Collectors.joining(", ")));
+                duplicatesCount += group.size() - 1;
+                if (duplicatesMode == DuplicateFinder.Mode.EXCLUDE) {
+                    excluded.addAll(group.subList(1, group.size()));
+                }
             }
-        }
-        timelineFiles.sort(Comparator.comparingLong(o -> o.name.sourceOrder));
-        return timelineFiles;
+            metrics.add(Metrics.DUPLICATES, duplicatesCount);
+            Log.summary("Duplicates found: " + duplicatesCount + " in " + groups.size() + " groups" +
+                    (excluded.isEmpty() ? "" : ", excluded from numbering"));
+            files.removeIf(excluded::contains);
+        });
     }
 
-    private void fixTimeForOneTimeline(List<MediaFile> files) {
-        int indFirmPrev = -1;
-        int indFirmNext = -1;
-        int ind = 0;
-        while ( ind >= 0 && ind < files.size()) {
-            if (ind >= indFirmNext) {
-                indFirmNext = indFirmNext(indFirmPrev, files);
+    /**
+     * Offsets of device clocks are proposed and, if configured, applied before fixing times,
+     * see {@link ClockOffsetEstimator}
+     */
+    public void estimateClockOffsets(List<MediaFile> files) {
+        if (clockOffsetMode == null) return;
+
+        metrics.time("estimateClockOffsets", () -> {
+            Map<String, List<Long>> timelines = new HashMap<>();
+            for (MediaFile file : files) {
+                if (file.hasFirmTime()) {
+                    timelines.computeIfAbsent(file.name.sourceKey, key -> new ArrayList<>()).add(file.getBestTime());
+                }
             }
-            MediaFile file = files.get(ind);
-            if (file.hasFirmTime()) {
-                if (indFirmPrev >= 0 && files.get(indFirmPrev).getBestTime() > file.getBestTime()) {
-                    throw new IllegalStateException("file " + files.get(indFirmPrev) +
-                            " is older than " + file );
+            Map<String, long[]> firmTimes = new HashMap<>();
+            timelines.forEach((key, times) -> firmTimes.put(key, times.stream().mapToLong(Long::longValue).toArray()));
+            Map<String, Long> offsets = estimateClockOffsets(firmTimes);
+            for (MediaFile file : files) {
+                Long offset = offsets.get(file.name.sourceKey);
+                if (offset != null) {
+                    file.shiftTime(offset);
                 }
-                file.tryToSetTimeFromName();
-                indFirmPrev = ind;
-            } else if (
-                    ind > 0 && files.get(ind - 1).getBestTime() > file.getBestTime() ||
-                    indFirmNext > 0 && files.get(indFirmNext).getBestTime() < file.getBestTime()
-                ) {
-                ind = fixFileTimesTillNextFirm(indFirmPrev, indFirmNext, files);
             }
-            ind++;
+        });
+    }
+
+    public void estimateClockOffsets(FileTable table) {
+        if (clockOffsetMode == null) return;
+
+        metrics.time("estimateClockOffsets", () -> table.shiftTimes(estimateClockOffsets(table.getFirmTimes())));
+    }
+
+    /** @return offsets to apply, empty if they are only proposed */
+    private Map<String, Long> estimateClockOffsets(Map<String, long[]> firmTimes) {
+        Map<String, Long> offsets = new HashMap<>();
+        for (ClockOffsetEstimator.Offset offset : new ClockOffsetEstimator(referenceKey).estimate(firmTimes)) {
+            Log.summary((clockOffsetMode == ClockOffsetEstimator.Mode.APPLY ? "Shifting " : "Proposed shift of ")
+                    + offset);
+            if (clockOffsetMode == ClockOffsetEstimator.Mode.APPLY) {
+                offsets.put(offset.sourceKey, offset.millis);
+            }
         }
+        return offsets;
     }
 
-    private int indFirmNext(int indFirmPrev, List<MediaFile> files) {
-        int ind1 = indFirmPrev + 1;
-        while (ind1 < files.size()) {
-            MediaFile file = files.get(ind1);
-            if (file.hasFirmTime()) {
-                return ind1;
+    /**
+     * Timelines don't share files, so they are fixed in parallel.
+     * Timelines, which didn't change since the previous run, are skipped, if the {@link ScanState} is used.
+     * All timelines are validated before fixing, see {@link TimelineValidator}
+     */
+    public void fixFileTime(List<MediaFile> files) {
+        metrics.time("fixFileTime", () -> {
+            Map<String, List<MediaFile>> timelines = getSourceOrderedTimelines(files);
+            if (scanState != null) {
+                int unchangedCount = 0;
+                for (Iterator<Map.Entry<String, List<MediaFile>>> it = timelines.entrySet().iterator();
+                     it.hasNext(); ) {
+                    Map.Entry<String, List<MediaFile>> entry = it.next();
+                    if (scanState.isUnchanged(entry.getKey(), entry.getValue())) {
+                        it.remove();
+                        unchangedCount++;
+                    }
+                }
+                metrics.add(Metrics.TIMELINES_SKIPPED, unchangedCount);
+                Log.summary("Unchanged timelines since the previous run: " + unchangedCount +
+                        ", to fix: " + timelines.size());
             }
-            ind1++;
+            TimelineValidator validator = newValidator();
+            inPool(() -> {
+                timelines.entrySet().parallelStream()
+                        .forEach(entry -> validator.validate(entry.getKey(), Timeline.of(entry.getValue())));
+                return null;
+            });
+            metrics.add(Metrics.INVERSIONS, validator.getInversionCount());
+            validator.check();
+            timelines.keySet().removeIf(validator::isSkipped);
+            inPool(() -> {
+                timelines.values().parallelStream().forEach(this::fixTimeForOneTimeline);
+                return null;
+            });
+        });
+    }
+
+    /**
+     * Index of timelines, built in one pass
+     * @return files of each source timeline by its key, sorted by {@link ParsedName#sourceOrder}
+     */
+    @NotNull
+    Map<String, List<MediaFile>> getSourceOrderedTimelines(List<MediaFile> files) {
+        Map<String, List<MediaFile>> timelines = new LinkedHashMap<>();
+        for (MediaFile file : files) {
+            timelines.computeIfAbsent(file.name.sourceKey, key -> new ArrayList<>()).add(file);
         }
-        return -1;
+        inPool(() -> {
+            timelines.values().parallelStream()
+                    .forEach(timeline -> timeline.sort(Comparator.comparingLong(o -> o.name.sourceOrder)));
+            return null;
+        });
+        return timelines;
     }
 
-        private int fixFileTimesTillNextFirm(int indFirmPrev, int indFirmNext, List<MediaFile> files) {
-        long timeFrom = indFirmPrev < 0 ? 0 : files.get(indFirmPrev).getFileTime();
-        long timeTo = indFirmNext < 0 ? 0 : files.get(indFirmNext).getBestTime() - 1000 * (indFirmNext - indFirmPrev);
-        if (timeTo < 0) {
-            timeTo = 0;
+    private void fixTimeForOneTimeline(List<MediaFile> files) {
+        TimelineFixer.fix(Timeline.of(files));
+    }
+
+    public void fixFileTime(FileTable table) {
+        metrics.time("fixFileTime", () -> inPool(() -> {
+            TimelineValidator validator = newValidator();
+            table.fixFileTime(validator);
+            metrics.add(Metrics.INVERSIONS, validator.getInversionCount());
+            return null;
+        }));
+    }
+
+    public void sort(List<MediaFile> files) {
+        metrics.time("sort", () -> sortFiles(files));
+    }
+
+    /**
+     * Files are merged by their timelines, see {@link TimelineMerger}, straight into the list,
+     * the same order as of a stable sort by time
+     */
+    private void sortFiles(List<MediaFile> files) {
+        MediaFile[] source = files.toArray(new MediaFile[0]);
+        long[] times = new long[source.length];
+        Map<String, Integer> timelineIds = new HashMap<>();
+        int[] timelineOfRow = new int[source.length];
+        for (int row = 0; row < source.length; row++) {
+            times[row] = source[row].getFileTime();
+            timelineOfRow[row] = timelineIds.computeIfAbsent(source[row].name.sourceKey, key -> timelineIds.size());
         }
-        if (timeTo > 0 && timeTo < timeFrom ) {
-            timeTo = timeFrom + files.get(indFirmNext).getBestTime();
+        int[] starts = new int[timelineIds.size() + 1];
+        for (int id : timelineOfRow) {
+            starts[id + 1]++;
         }
-        long timeShiftForward = -1;
-        if (indFirmPrev >= 0 && indFirmPrev < (files.size() - 1)) {
-            timeShiftForward = files.get(indFirmPrev).getBestTime() - files.get(indFirmPrev + 1).getBestTime() + 1000;
+        for (int id = 0; id < timelineIds.size(); id++) {
+            starts[id + 1] += starts[id];
         }
-        long timeShiftBack = -1;
-        if (indFirmNext > 0) {
-            timeShiftBack = files.get(indFirmNext - 1).getBestTime() + 1000 - files.get(indFirmNext).getBestTime();
+        int[] rows = new int[source.length];
+        int[] positions = Arrays.copyOf(starts, timelineIds.size());
+        for (int row = 0; row < source.length; row++) {
+            rows[positions[timelineOfRow[row]]++] = row;
         }
-        if (timeShiftForward > 0) {
-            long fileTimePrev = timeFrom;
-            for (int ind2 = indFirmPrev + 1; ind2 < (indFirmNext >= 0 ? indFirmNext : files.size()); ind2++) {
-                long fileTime = files.get(ind2).getBestTime() + timeShiftForward;
-                if (fileTime <= fileTimePrev) {
-                    fileTime = fileTimePrev + 1000;
-                }
-                if (timeFrom > 0 && fileTime <= timeFrom) {
-                    fileTime = timeFrom;
-                    timeFrom += 1000;
-                }
-                if (timeTo > 0 && fileTime >= timeTo) {
-                    fileTime = timeTo;
-                    timeTo += 1000;
-                }
-                files.get(ind2).setFileTime(fileTime);
-                fileTimePrev = fileTime;
+
+        long[] existingOrders = new long[source.length];
+        int[] existingNDigits = {0};
+        int[] index = {0};
+        TimelineMerger.merge(rows, starts, times, row -> {
+            MediaFile file = source[row];
+            files.set(index[0], file);
+            existingOrders[index[0]++] = file.name.globalOrder;
+            existingNDigits[0] = Math.max(existingNDigits[0], file.name.getGlobalOrderLength());
+        });
+        long[] orders = numbering.assign(existingOrders);
+        int nDigits = numbering.calcNDigits(orders, existingNDigits[0]);
+        for (int ind = 0; ind < files.size(); ind++) {
+            MediaFile file = files.get(ind);
+            file.setFileName(String.format("%0" + nDigits + "d-%s", orders[ind], file.name.getPermanentNamePart()));
+        }
+    }
+
+    /**
+     * All changes are applied together, see {@link RenameExecutor}
+     */
+    @NotNull
+    public RenameExecutor.Result saveChanges(List<MediaFile> files) {
+        return metrics.time("saveChanges", () -> saveChanges(getChanges(files), files.size()));
+    }
+
+    @NotNull
+    public List<FileChange> getChanges(List<MediaFile> files) {
+        List<FileChange> changes = new ArrayList<>();
+        for (MediaFile file : files) {
+            if (file.changed()) {
+                changes.add(file.toChange());
+            } else {
+                Log.trace(() -> "No changes for " + file.name.name);
             }
-        } else if (timeShiftBack > 0) {
-            long fileTimePrev = timeFrom;
-            for (int ind2 = indFirmPrev + 1; ind2 < (indFirmNext >= 0 ? indFirmNext : files.size()); ind2++) {
-                long fileTime = files.get(ind2).getBestTime() - timeShiftBack;
-                if (fileTime <= fileTimePrev) {
-                    fileTime = fileTimePrev + 1000;
-                }
-                if (timeFrom > 0 && fileTime <= timeFrom) {
-                    fileTime = timeFrom;
-                    timeFrom += 1000;
-                }
-                if (timeTo > 0 && fileTime >= timeTo) {
-                    fileTime = timeTo;
-                    timeTo += 1000;
+        }
+        return changes;
+    }
+
+    /** Writes the changes to the plan file instead of applying them, see {@link ChangePlan} */
+    public void writePlan(@NotNull List<FileChange> changes, @NotNull Path planPath) {
+        metrics.time("writePlan", () -> {
+            try {
+                ChangePlan.write(planPath, roots, changes);
+                for (FileChange change : changes) {
+                    Log.change("Planned " + change);
                 }
-                files.get(ind2).setFileTime(fileTime);
-                fileTimePrev = fileTime;
+                Log.summary("Planned changes of " + changes.size() + " files to " + planPath);
+            } catch (IOException | RuntimeException e) {
+                Log.error("Failed to write the plan: " + planPath + ", error: " + e);
             }
-        }
-        return indFirmNext < 0 ? files.size() : indFirmNext - 1;
+        });
     }
 
-    public void sort(List<MediaFile> files) {
-        Collections.sort(files);
-        int nDigits = calcNDigits(files.size());
-        int order = 1;
-        for (MediaFile file : files) {
-            file.setFileName(String.format("%0" + nDigits + "d-%s", order, file.name.getPermanentNamePart()));
-            order++;
+    /** Applies changes of the plan to files in the roots, without scanning them */
+    public void applyPlan(@NotNull Path planPath) {
+        metrics.time("applyPlan", () -> {
+            List<FileChange> changes;
+            try {
+                changes = ChangePlan.read(planPath, roots);
+            } catch (IOException | RuntimeException e) {
+                Log.error("Failed to read the plan: " + planPath + ", error: " + e);
+                return;
+            }
+            Log.summary("Applying changes of " + changes.size() + " files from " + planPath);
+            saveChanges(changes, changes.size());
+        });
+    }
+
+    @NotNull
+    RenameExecutor.Result saveChanges(List<FileChange> changes, int filesCount) {
+        RenameExecutor.Result result = inPool(() -> new RenameExecutor().execute(changes));
+        metrics.add(Metrics.FILES_UNCHANGED, filesCount - changes.size());
+        metrics.add(Metrics.RENAMES, result.renamedCount);
+        metrics.add(Metrics.TIME_CHANGES, result.timeChangedCount);
+        metrics.add(Metrics.FAILURES, result.failedCount);
+        Log.summary("Saved " + result.savedCount + " of " + filesCount + " files" +
+                (result.failedCount > 0 ? ", failed: " + result.failedCount : ""));
+        return result;
+    }
+
+    /**
+     * Persists the scan state and the metadata cache, if they are used, after changes of the files were saved
+     * @param savedSources see {@link RenameExecutor.Result#savedSources}
+     */
+    public void saveState(@NotNull List<MediaFile> files, @NotNull Set<Path> savedSources) {
+        if (scanState != null) {
+            scanState.save(files);
+        }
+        if (metadataCache != null) {
+            metadataCache.save(files, savedSources);
         }
     }
 
-    public void saveChanges(List<MediaFile> files) {
-        int savedCount = 0;
-        for (MediaFile file : files) {
-            if (file.save()) {
-                savedCount++;
+    /** Links all files under their new names in the view directory instead of renaming them */
+    public void buildView(List<MediaFile> files, @NotNull Path viewDir) {
+        metrics.time("buildView", () -> linkFiles(
+                files.stream().map(MediaFile::toChange).collect(Collectors.toList()), viewDir));
+    }
+
+    public void buildView(FileTable table, @NotNull Path viewDir) {
+        metrics.time("buildView", () -> linkFiles(table.getAllFiles(), viewDir));
+    }
+
+    private void linkFiles(List<FileChange> files, Path viewDir) {
+        Path view = viewDir.toAbsolutePath().normalize();
+        for (Path root : roots) {
+            Path rootPath = root.toAbsolutePath().normalize();
+            if (view.equals(rootPath) || recursive && view.startsWith(rootPath)) {
+                Log.error("The view " + viewDir + " shouldn't be inside the directory to process: " + root);
+                return;
             }
         }
-        System.out.println("Saved " + savedCount + " of " + files.size() + " files");
+        try {
+            ViewBuilder.prepare(viewDir);
+        } catch (IOException e) {
+            Log.error("Failed to prepare the view " + viewDir + ", error: " + e);
+            return;
+        }
+        inPool(() -> {
+            new ViewBuilder(metrics).build(viewDir, files);
+            return null;
+        });
+    }
+
+    public void sort(FileTable table) {
+        metrics.time("sort", () -> table.sort(numbering));
+    }
+
+    public void saveChanges(FileTable table) {
+        metrics.time("saveChanges", () -> saveChanges(table.getChanges(), table.size()));
     }
 
-    int calcNDigits(int size) {
+    static int calcNDigits(int size) {
         return (int) Math.ceil(Math.log10(size + 1));
     }
 }
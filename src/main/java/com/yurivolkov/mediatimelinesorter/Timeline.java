@@ -0,0 +1,79 @@
+package com.yurivolkov.mediatimelinesorter;
+/*
+ * Copyright (c) 2017 yvolk (Yuri Volkov), http://yurivolkov.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.List;
+
+/**
+ * Files of one source timeline, accessed by their index in the timeline,
+ * so the same time fixing works on {@link MediaFile} objects and on the {@link FileTable}
+ */
+public interface Timeline {
+    int size();
+
+    boolean hasFirmTime(int index);
+
+    long getBestTime(int index);
+
+    long getFileTime(int index);
+
+    void setFileTime(int index, long fileTime);
+
+    void tryToSetTimeFromName(int index);
+
+    String toString(int index);
+
+    static Timeline of(@NotNull List<MediaFile> files) {
+        return new Timeline() {
+            @Override
+            public int size() {
+                return files.size();
+            }
+
+            @Override
+            public boolean hasFirmTime(int index) {
+                return files.get(index).hasFirmTime();
+            }
+
+            @Override
+            public long getBestTime(int index) {
+                return files.get(index).getBestTime();
+            }
+
+            @Override
+            public long getFileTime(int index) {
+                return files.get(index).getFileTime();
+            }
+
+            @Override
+            public void setFileTime(int index, long fileTime) {
+                files.get(index).setFileTime(fileTime);
+            }
+
+            @Override
+            public void tryToSetTimeFromName(int index) {
+                files.get(index).tryToSetTimeFromName();
+            }
+
+            @Override
+            public String toString(int index) {
+                return files.get(index).toString();
+            }
+        };
+    }
+}
@@ -0,0 +1,120 @@
+package com.yurivolkov.mediatimelinesorter;
+/*
+ * Copyright (c) 2017 yvolk (Yuri Volkov), http://yurivolkov.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/**
+ * Fixes times of files of one source timeline, so they go in the order of the timeline.
+ * Files with firm time are anchors, times of other files between them are shifted.
+ * Firm flags, best times and indices of next firm files are read into arrays once,
+ * so the whole timeline is fixed in one linear pass
+ */
+public class TimelineFixer {
+    private final Timeline files;
+    private final int size;
+    private final boolean[] firm;
+    /** The same as {@link Timeline#getBestTime(int)}, updated as times of files are fixed */
+    private final long[] bestTimes;
+    /** Index of the first firm file at this index or after it, -1 if none */
+    private final int[] nextFirm;
+
+    private TimelineFixer(Timeline files) {
+        this.files = files;
+        size = files.size();
+        firm = new boolean[size];
+        bestTimes = new long[size];
+        nextFirm = new int[size + 1];
+        nextFirm[size] = -1;
+        for (int ind = size - 1; ind >= 0; ind--) {
+            firm[ind] = files.hasFirmTime(ind);
+            bestTimes[ind] = files.getBestTime(ind);
+            nextFirm[ind] = firm[ind] ? ind : nextFirm[ind + 1];
+        }
+    }
+
+    public static void fix(Timeline files) {
+        new TimelineFixer(files).fix();
+    }
+
+    private void fix() {
+        int indFirmPrev = -1;
+        int indFirmNext = -1;
+        int ind = 0;
+        while (ind < size) {
+            if (ind >= indFirmNext) {
+                indFirmNext = nextFirm[indFirmPrev + 1];
+            }
+            if (firm[ind]) {
+                if (indFirmPrev >= 0 && bestTimes[indFirmPrev] > bestTimes[ind]) {
+                    throw new IllegalStateException("file " + files.toString(indFirmPrev) +
+                            " is older than " + files.toString(ind));
+                }
+                files.tryToSetTimeFromName(ind);
+                indFirmPrev = ind;
+            } else if (
+                    ind > 0 && bestTimes[ind - 1] > bestTimes[ind] ||
+                    indFirmNext > 0 && bestTimes[indFirmNext] < bestTimes[ind]
+                ) {
+                ind = fixFileTimesTillNextFirm(indFirmPrev, indFirmNext);
+            }
+            ind++;
+        }
+    }
+
+    /**
+     * Time of a firm file is its best time after {@link Timeline#tryToSetTimeFromName(int)}
+     * @return index of the last fixed file
+     */
+    private int fixFileTimesTillNextFirm(int indFirmPrev, int indFirmNext) {
+        long timeFrom = indFirmPrev < 0 ? 0 : bestTimes[indFirmPrev];
+        long timeTo = indFirmNext < 0 ? 0 : bestTimes[indFirmNext] - 1000 * (indFirmNext - indFirmPrev);
+        if (timeTo < 0) {
+            timeTo = 0;
+        }
+        if (timeTo > 0 && timeTo < timeFrom ) {
+            timeTo = timeFrom + bestTimes[indFirmNext];
+        }
+        // Shift forward after the previous firm file or back before the next one
+        long timeShift = 0;
+        if (indFirmPrev >= 0 && indFirmPrev < (size - 1)) {
+            timeShift = Math.max(0, bestTimes[indFirmPrev] - bestTimes[indFirmPrev + 1] + 1000);
+        }
+        if (timeShift == 0 && indFirmNext > 0) {
+            timeShift = Math.min(0, bestTimes[indFirmNext] - bestTimes[indFirmNext - 1] - 1000);
+        }
+        int indEnd = indFirmNext >= 0 ? indFirmNext : size;
+        if (timeShift == 0) return indEnd - 1;
+
+        long fileTimePrev = timeFrom;
+        for (int ind2 = indFirmPrev + 1; ind2 < indEnd; ind2++) {
+            long fileTime = bestTimes[ind2] + timeShift;
+            if (fileTime <= fileTimePrev) {
+                fileTime = fileTimePrev + 1000;
+            }
+            if (timeFrom > 0 && fileTime <= timeFrom) {
+                fileTime = timeFrom;
+                timeFrom += 1000;
+            }
+            if (timeTo > 0 && fileTime >= timeTo) {
+                fileTime = timeTo;
+                timeTo += 1000;
+            }
+            files.setFileTime(ind2, fileTime);
+            bestTimes[ind2] = fileTime;
+            fileTimePrev = fileTime;
+        }
+        return indEnd - 1;
+    }
+}
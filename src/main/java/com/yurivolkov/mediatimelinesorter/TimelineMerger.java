@@ -0,0 +1,105 @@
+package com.yurivolkov.mediatimelinesorter;
+/*
+ * Copyright (c) 2017 yvolk (Yuri Volkov), http://yurivolkov.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Arrays;
+import java.util.function.IntConsumer;
+
+/**
+ * Heap-based k-way merge of timelines into one chronological sequence in O(N log K).
+ * After fixing, times of files of a timeline usually go in order already, so a timeline is sorted
+ * only if it's out of order. Equal times go in the order of rows, so the result is the same
+ * as of a stable sort of all rows by time.
+ */
+public class TimelineMerger {
+
+    private TimelineMerger() {
+        // Empty
+    }
+
+    /**
+     * @param rows rows of each timeline are kept together. Rows of unordered timelines are reordered in place
+     * @param starts start of each timeline in rows, followed by the end of the last one
+     * @param times time of each row
+     * @param consumer receives rows in chronological order
+     */
+    public static void merge(@NotNull int[] rows, @NotNull int[] starts, @NotNull long[] times,
+                             @NotNull IntConsumer consumer) {
+        int timelinesCount = starts.length - 1;
+        // Heap of timelines by their current row, and current positions in timelines
+        int[] heap = new int[timelinesCount];
+        int[] positions = Arrays.copyOf(starts, timelinesCount);
+        int heapSize = 0;
+        for (int id = 0; id < timelinesCount; id++) {
+            if (starts[id] == starts[id + 1]) continue;
+
+            if (!isOrdered(rows, starts[id], starts[id + 1], times)) {
+                Arrays.sort(rows, starts[id], starts[id + 1]);
+                FileTable.sortByKey(rows, starts[id], starts[id + 1], times);
+            }
+            heap[heapSize++] = id;
+        }
+        for (int ind = heapSize / 2 - 1; ind >= 0; ind--) {
+            siftDown(heap, heapSize, ind, rows, positions, times);
+        }
+        while (heapSize > 0) {
+            int id = heap[0];
+            consumer.accept(rows[positions[id]++]);
+            if (positions[id] == starts[id + 1]) {
+                heap[0] = heap[--heapSize];
+            }
+            if (heapSize > 0) {
+                siftDown(heap, heapSize, 0, rows, positions, times);
+            }
+        }
+    }
+
+    private static boolean isOrdered(int[] rows, int from, int to, long[] times) {
+        for (int ind = from + 1; ind < to; ind++) {
+            if (!precedes(rows[ind - 1], rows[ind], times)) return false;
+        }
+        return true;
+    }
+
+    private static boolean precedes(int row1, int row2, long[] times) {
+        return times[row1] < times[row2] || times[row1] == times[row2] && row1 < row2;
+    }
+
+    private static void siftDown(int[] heap, int heapSize, int index, int[] rows, int[] positions, long[] times) {
+        int id = heap[index];
+        int row = rows[positions[id]];
+        while (true) {
+            int child = 2 * index + 1;
+            if (child >= heapSize) break;
+
+            int childRow = rows[positions[heap[child]]];
+            if (child + 1 < heapSize) {
+                int rightRow = rows[positions[heap[child + 1]]];
+                if (precedes(rightRow, childRow, times)) {
+                    child++;
+                    childRow = rightRow;
+                }
+            }
+            if (!precedes(childRow, row, times)) break;
+
+            heap[index] = heap[child];
+            index = child;
+        }
+        heap[index] = id;
+    }
+}
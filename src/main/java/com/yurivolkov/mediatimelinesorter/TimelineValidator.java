@@ -0,0 +1,175 @@
+package com.yurivolkov.mediatimelinesorter;
+/*
+ * Copyright (c) 2017 yvolk (Yuri Volkov), http://yurivolkov.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Finds all inversions of firm times in all timelines before any time is fixed, so all of them are reported
+ * at once, instead of the {@link TimelineFixer} stopping at the first one.
+ * Timelines are validated in parallel, each of them once, in its source order
+ */
+public class TimelineValidator {
+
+    /** What to do, if inversions were found */
+    public enum OnConflict {
+        /** Report the inversions and don't change any file */
+        STOP,
+        /** Report the inversions and don't fix times of the inconsistent timelines, sort them as they are */
+        SKIP
+    }
+
+    /** Inversions were found and the run stops without changing any file */
+    public static class ConflictException extends IllegalStateException {
+        private static final long serialVersionUID = 1L;
+
+        ConflictException(String message) {
+            super(message);
+        }
+    }
+
+    @NotNull
+    private final OnConflict onConflict;
+    /** Sorted by timeline keys, so the report is stable */
+    private final Map<String, TimelineReport> reports = new TreeMap<>();
+
+    /** A firm file, which is older than the previous firm file of its timeline */
+    static class Inversion {
+        final String previous;
+        final String file;
+        /** How much the time went back */
+        final long backMillis;
+
+        Inversion(String previous, String file, long backMillis) {
+            this.previous = previous;
+            this.file = file;
+            this.backMillis = backMillis;
+        }
+
+        @Override
+        public String toString() {
+            return file + " is older than the previous " + previous + " by " + backMillis / 1000 + " s";
+        }
+    }
+
+    static class TimelineReport {
+        final String sourceKey;
+        final List<Inversion> inversions = new ArrayList<>();
+
+        TimelineReport(String sourceKey) {
+            this.sourceKey = sourceKey;
+        }
+
+        /**
+         * If the device clock was set back once, shifting files after the first inversion
+         * by the largest step back removes all inversions
+         */
+        long getSuggestedShiftMillis() {
+            long shift = 0;
+            for (Inversion inversion : inversions) {
+                shift = Math.max(shift, inversion.backMillis);
+            }
+            return (shift / 1000 + 1) * 1000;
+        }
+
+        @Override
+        public String toString() {
+            return "Timeline '" + sourceKey + "': " + inversions.size() + " inversion" +
+                    (inversions.size() == 1 ? "" : "s") + ", suggested shift of files from " +
+                    inversions.get(0).file + " on: +" + getSuggestedShiftMillis() / 1000 + " s";
+        }
+    }
+
+    public TimelineValidator(@NotNull OnConflict onConflict) {
+        this.onConflict = onConflict;
+    }
+
+    /**
+     * Compares best times of consecutive firm files of the timeline in one pass.
+     * May be called several times for parts of one timeline, in its source order
+     */
+    public void validate(@NotNull String sourceKey, @NotNull Timeline files) {
+        List<Inversion> inversions = null;
+        int indFirmPrev = -1;
+        long timePrev = 0;
+        for (int ind = 0; ind < files.size(); ind++) {
+            if (!files.hasFirmTime(ind)) continue;
+
+            long time = files.getBestTime(ind);
+            if (indFirmPrev >= 0 && timePrev > time) {
+                if (inversions == null) {
+                    inversions = new ArrayList<>();
+                }
+                inversions.add(new Inversion(files.toString(indFirmPrev), files.toString(ind), timePrev - time));
+            }
+            indFirmPrev = ind;
+            timePrev = time;
+        }
+        if (inversions != null) {
+            synchronized (reports) {
+                reports.computeIfAbsent(sourceKey, TimelineReport::new).inversions.addAll(inversions);
+            }
+        }
+    }
+
+    public boolean hasConflicts() {
+        synchronized (reports) {
+            return !reports.isEmpty();
+        }
+    }
+
+    /** @return true if times of the timeline shouldn't be fixed */
+    public boolean isSkipped(@NotNull String sourceKey) {
+        synchronized (reports) {
+            return reports.containsKey(sourceKey);
+        }
+    }
+
+    public int getInversionCount() {
+        synchronized (reports) {
+            return reports.values().stream().mapToInt(report -> report.inversions.size()).sum();
+        }
+    }
+
+    /**
+     * Reports all found inversions
+     * @throws ConflictException if inversions were found and the run should stop
+     */
+    public void check() {
+        if (!hasConflicts()) return;
+
+        synchronized (reports) {
+            Log.summary("Firm times go back in " + reports.size() + " timelines, inversions: " +
+                    getInversionCount());
+            for (TimelineReport report : reports.values()) {
+                Log.summary(report.toString());
+                for (Inversion inversion : report.inversions) {
+                    Log.change("  " + inversion);
+                }
+            }
+        }
+        if (onConflict == OnConflict.STOP) {
+            throw new ConflictException("Inversions of firm times found in " + reports.size() +
+                    " timelines, no files were changed. Fix them or use --conflicts=skip");
+        }
+        Log.summary("Times of these timelines are not fixed");
+    }
+}
@@ -0,0 +1,273 @@
+package com.yurivolkov.mediatimelinesorter;
+/*
+ * Copyright (c) 2017 yvolk (Yuri Volkov), http://yurivolkov.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps sorted files in memory and splices files, copied into the roots later, into their timelines.
+ * Only the span of a timeline between firm files around a new file is fixed again,
+ * and only files, which names or times changed, are renamed.
+ * Use {@link Numbering#gapped(int)}, so new files get numbers from gaps and other files keep theirs.
+ */
+public class TimelineWatcher {
+    /** Files are processed, when there were no new events during this time, e.g. when copying ended */
+    private static final long QUIET_MILLIS = 2000;
+
+    @NotNull
+    private final Sorter sorter;
+    /** All files, sorted by time */
+    private final List<MediaFile> files = new ArrayList<>();
+    /** Files of each source timeline, sorted by their order in the timeline */
+    private final Map<String, List<MediaFile>> timelines = new HashMap<>();
+    private final Map<Path, MediaFile> byPath = new HashMap<>();
+
+    /** @param files as they are on disk, e.g. rescanned after a full run */
+    public TimelineWatcher(@NotNull Sorter sorter, @NotNull List<MediaFile> files) {
+        this(sorter, files, Collections.emptyList());
+    }
+
+    /**
+     * Starts from files of a full run, kept in memory, so they are not scanned again
+     * @param savedChanges changes of these files, saved by the run
+     */
+    public TimelineWatcher(@NotNull Sorter sorter, @NotNull List<MediaFile> files,
+                           @NotNull List<FileChange> savedChanges) {
+        this.sorter = sorter;
+        for (MediaFile file : files) {
+            add(file);
+        }
+        refresh(savedChanges);
+        this.files.sort(null);
+        for (List<MediaFile> timeline : timelines.values()) {
+            timeline.sort((o1, o2) -> Long.compare(o1.name.sourceOrder, o2.name.sourceOrder));
+        }
+    }
+
+    private void add(MediaFile file) {
+        files.add(file);
+        timelines.computeIfAbsent(file.name.sourceKey, key -> new ArrayList<>()).add(file);
+        byPath.put(key(file.path), file);
+    }
+
+    private static Path key(Path path) {
+        return path.toAbsolutePath().normalize();
+    }
+
+    public int size() {
+        return files.size();
+    }
+
+    /** Watches the roots till the thread is interrupted */
+    public void watch() throws IOException {
+        try (WatchService service = FileSystems.getDefault().newWatchService()) {
+            Map<WatchKey, Path> dirs = new HashMap<>();
+            for (Path root : sorter.roots) {
+                register(service, dirs, root);
+            }
+            Log.summary("Watching for new files in " + dirs.size() + " directories");
+            Set<Path> created = new LinkedHashSet<>();
+            Set<Path> deleted = new LinkedHashSet<>();
+            while (!Thread.currentThread().isInterrupted()) {
+                WatchKey key = created.isEmpty() && deleted.isEmpty()
+                        ? service.take()
+                        : service.poll(QUIET_MILLIS, TimeUnit.MILLISECONDS);
+                if (key == null) {
+                    process(new ArrayList<>(created), new ArrayList<>(deleted));
+                    created.clear();
+                    deleted.clear();
+                    continue;
+                }
+                Path dir = dirs.get(key);
+                for (WatchEvent<?> event : key.pollEvents()) {
+                    if (dir == null || event.kind() == StandardWatchEventKinds.OVERFLOW) continue;
+
+                    Path path = key(dir.resolve((Path) event.context()));
+                    if (event.kind() == StandardWatchEventKinds.ENTRY_DELETE) {
+                        created.remove(path);
+                        deleted.add(path);
+                    } else if (Files.isDirectory(path)) {
+                        if (sorter.recursive && event.kind() == StandardWatchEventKinds.ENTRY_CREATE) {
+                            register(service, dirs, path);
+                            // Files may be copied into the directory before it's registered
+                            for (MediaFile file : new DirectoryScanner(true, sorter.metrics).scan(Collections.singletonList(path))) {
+                                created.add(key(file.path));
+                            }
+                        }
+                    } else {
+                        // Modification of a file, being copied, postpones its processing
+                        deleted.remove(path);
+                        created.add(path);
+                    }
+                }
+                if (!key.reset()) {
+                    dirs.remove(key);
+                }
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void register(WatchService service, Map<WatchKey, Path> dirs, Path dir) throws IOException {
+        dirs.put(dir.register(service, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_DELETE,
+                StandardWatchEventKinds.ENTRY_MODIFY), dir);
+        if (!sorter.recursive) return;
+
+        for (Path path : DirectoryScanner.listDir(dir)) {
+            if (Files.isDirectory(path)) {
+                register(service, dirs, path);
+            }
+        }
+    }
+
+    /**
+     * Splices new files into their timelines, fixes affected spans, renumbers and saves changes,
+     * then persists the scan state and the metadata cache, if they are used.
+     * Files, already known by their current paths (e.g. renamed by the sorter itself), are skipped,
+     * duplicates of known files are excluded as in the full run, see {@link Sorter#findDuplicates(List, List)}
+     */
+    public void process(@NotNull List<Path> created, @NotNull List<Path> deleted) {
+        int removedCount = 0;
+        for (Path path : deleted) {
+            MediaFile file = byPath.remove(key(path));
+            if (file != null) {
+                files.remove(file);
+                timelines.get(file.name.sourceKey).remove(file);
+                removedCount++;
+                Log.change("Removed " + file.name.name);
+            }
+        }
+        List<MediaFile> added = new ArrayList<>();
+        for (Path path : created) {
+            if (byPath.containsKey(key(path)) || Sorter.isServiceFile(path.getFileName().toString())) continue;
+
+            BasicFileAttributes attributes = DirectoryScanner.readAttributes(path, sorter.metrics);
+            if (attributes == null || !attributes.isRegularFile()) continue;
+
+            MediaFile file = new MediaFile(path, attributes);
+            if (sorter.isReadEmbeddedTime()) {
+                file.readEmbeddedTime();
+            }
+            added.add(file);
+        }
+        sorter.findDuplicates(files, added);
+        if (added.isEmpty()) {
+            if (removedCount > 0) {
+                sorter.saveState(files, Collections.emptySet());
+            }
+            return;
+        }
+
+        Log.summary("New files: " + added.size());
+        Set<String> failedTimelines = new LinkedHashSet<>();
+        for (MediaFile file : added) {
+            List<MediaFile> timeline = timelines.computeIfAbsent(file.name.sourceKey, key -> new ArrayList<>());
+            int index = insertionIndex(timeline, file.name.sourceOrder);
+            timeline.add(index, file);
+            files.add(file);
+            byPath.put(key(file.path), file);
+            try {
+                fixSpan(timeline, index);
+            } catch (IllegalStateException e) {
+                failedTimelines.add(file.name.sourceKey);
+                Log.error("Failed to fix the timeline '" + file.name.sourceKey + "': " + e.getMessage());
+            }
+        }
+        if (!failedTimelines.isEmpty()) {
+            // Changes are not saved, so times are reverted till the next batch
+            for (MediaFile file : files) {
+                if (failedTimelines.contains(file.name.sourceKey)) {
+                    file.setFileTime(file.fileTimeInitial);
+                }
+            }
+        }
+        // The list is almost sorted, so this is fast
+        sorter.sort(files);
+        List<FileChange> changes = sorter.getChanges(files);
+        RenameExecutor.Result result = sorter.saveChanges(changes, files.size());
+        sorter.saveState(files, result.savedSources);
+        refresh(changes);
+    }
+
+    /** @return index after files with the same or lower order */
+    private static int insertionIndex(List<MediaFile> timeline, long sourceOrder) {
+        int low = 0;
+        int high = timeline.size();
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (timeline.get(mid).name.sourceOrder <= sourceOrder) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /** Fixes times between firm files around the index, including these firm files */
+    private static void fixSpan(List<MediaFile> timeline, int index) {
+        int from = index - 1;
+        while (from > 0 && !timeline.get(from).hasFirmTime()) {
+            from--;
+        }
+        int to = index + 1;
+        while (to < timeline.size() - 1 && !timeline.get(to).hasFirmTime()) {
+            to++;
+        }
+        TimelineFixer.fix(Timeline.of(timeline.subList(Math.max(from, 0), Math.min(to + 1, timeline.size()))));
+    }
+
+    /** Replaces changed files with their state on disk */
+    private void refresh(List<FileChange> changes) {
+        if (changes.isEmpty()) return;
+
+        Map<Path, MediaFile> refreshed = new HashMap<>();
+        for (FileChange change : changes) {
+            MediaFile old = byPath.remove(key(change.source));
+            Path path = MediaFile.exists(change.getTarget()) ? change.getTarget() : change.source;
+            MediaFile file = new MediaFile(path);
+            if (old != null) {
+                file.copyEmbeddedTime(old);
+                refreshed.put(key(change.source), file);
+            }
+            byPath.put(key(path), file);
+        }
+        files.replaceAll(file -> refreshed.getOrDefault(key(file.path), file));
+        for (List<MediaFile> timeline : timelines.values()) {
+            timeline.replaceAll(file -> refreshed.getOrDefault(key(file.path), file));
+        }
+    }
+}
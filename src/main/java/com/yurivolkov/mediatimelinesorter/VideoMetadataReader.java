@@ -0,0 +1,320 @@
+package com.yurivolkov.mediatimelinesorter;
+/*
+ * Copyright (c) 2017 yvolk (Yuri Volkov), http://yurivolkov.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.DateTimeException;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+
+/**
+ * Reads creation time of video files without reading their media data:
+ * <ul>
+ * <li>MP4/MOV (ISO base media file format): box headers are read one by one, skipping media data,
+ * till the "mvhd" (or "tkhd") box inside the "moov" box</li>
+ * <li>MTS/M2TS (AVCHD): "MDPM" metadata of the first video frame, which is near the beginning of the file</li>
+ * </ul>
+ */
+public class VideoMetadataReader {
+    /** Seconds from 1904-01-01 (ISO media time) to 1970-01-01 */
+    private static final long ISO_MEDIA_EPOCH_SECONDS = 2082844800L;
+    /** Protection from corrupted files */
+    private static final int MAX_BOXES = 10000;
+    private static final int HEADER_BYTES = 16;
+    /** Version, flags and the 64 bit creation time */
+    private static final int TIME_BYTES = 12;
+
+    private static final int TS_PACKET_BYTES = 188;
+    /** M2TS packets are prefixed with a 4 byte timestamp */
+    private static final int M2TS_PACKET_BYTES = 192;
+    private static final int TS_HEADER_BYTES = 4;
+    private static final byte TS_SYNC_BYTE = 0x47;
+    /** AVCHD (BDAV) streams keep the primary video in this PID */
+    private static final int AVCHD_VIDEO_PID = 0x1011;
+    private static final int TS_CHUNK_PACKETS = 88;
+    /** MDPM is in the first video frame */
+    private static final int TS_MAX_BYTES = 512 * 1024;
+    private static final byte[] MDPM = "MDPM".getBytes(StandardCharsets.US_ASCII);
+    /** "MDPM", the number of entries and up to 255 entries of 5 bytes */
+    private static final int MDPM_MAX_BYTES = 4 + 1 + 255 * 5;
+    private static final int TAG_DATE = 0x18;
+    private static final int TAG_TIME = 0x19;
+
+    private VideoMetadataReader() {
+        // Empty
+    }
+
+    /** Creation time of ISO media is in UTC */
+    @NotNull
+    static EmbeddedTimeReader.Result readIsoMedia(@NotNull Path path) {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long[] bytesRead = {0};
+            long time = readIsoMediaTime(channel, 0, channel.size(), bytesRead, 0);
+            return new EmbeddedTimeReader.Result(time, bytesRead[0]);
+        } catch (IOException | RuntimeException e) {
+            Log.error("Failed to read metadata of " + path + ", error: " + e);
+            return EmbeddedTimeReader.Result.EMPTY;
+        }
+    }
+
+    /**
+     * Walks boxes in the range, descending into containers of "mvhd" and "tkhd" boxes
+     * @return 0 if not found
+     */
+    private static long readIsoMediaTime(FileChannel channel, long from, long to, long[] bytesRead, int boxesCount)
+            throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.BIG_ENDIAN);
+        long trackTime = 0;
+        long position = from;
+        while (position + 8 <= to && boxesCount++ < MAX_BOXES) {
+            int count = readFully(channel, header, 0, position, (int) Math.min(HEADER_BYTES, to - position));
+            bytesRead[0] += count;
+            if (count < 8) break;
+
+            long size = header.getInt(0) & 0xFFFFFFFFL;
+            String type = new String(header.array(), 4, 4, StandardCharsets.US_ASCII);
+            int headerSize = 8;
+            if (size == 1) {
+                if (count < 16) break;
+                size = header.getLong(8);
+                headerSize = 16;
+            } else if (size == 0) {
+                size = to - position;
+            }
+            if (size < headerSize || position + size > to) break;
+
+            switch (type) {
+                case "moov":
+                case "trak":
+                    long time = readIsoMediaTime(channel, position + headerSize, position + size, bytesRead,
+                            boxesCount);
+                    if (time > 0) return time;
+                    break;
+                case "mvhd":
+                    long movieTime = readCreationTime(channel, position + headerSize, bytesRead);
+                    if (movieTime > 0) return movieTime;
+                    break;
+                case "tkhd":
+                    if (trackTime == 0) {
+                        trackTime = readCreationTime(channel, position + headerSize, bytesRead);
+                    }
+                    break;
+                default:
+                    break;
+            }
+            position += size;
+        }
+        return trackTime;
+    }
+
+    /** Reads the creation time at the start of the "mvhd" or "tkhd" box content */
+    private static long readCreationTime(FileChannel channel, long position, long[] bytesRead) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(TIME_BYTES).order(ByteOrder.BIG_ENDIAN);
+        int count = readFully(channel, buffer, 0, position, TIME_BYTES);
+        bytesRead[0] += count;
+        if (count < 8) return 0;
+
+        long seconds = buffer.get(0) == 1
+                ? (count < TIME_BYTES ? 0 : buffer.getLong(4))
+                : buffer.getInt(4) & 0xFFFFFFFFL;
+        return seconds > ISO_MEDIA_EPOCH_SECONDS ? (seconds - ISO_MEDIA_EPOCH_SECONDS) * 1000 : 0;
+    }
+
+    /**
+     * AVCHD recording time is a local time. Its time zone and DST flag are in the first byte of the date entry,
+     * if the zone is unknown, the time is treated as a local time of the default time zone.
+     * MDPM is searched in the payload of the video stream only, as it may be split by headers of the packets
+     */
+    @NotNull
+    static EmbeddedTimeReader.Result readTransportStream(@NotNull Path path) {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            ByteBuffer chunk = ByteBuffer.allocate(TS_CHUNK_PACKETS * M2TS_PACKET_BYTES);
+            byte[] payload = new byte[TS_CHUNK_PACKETS * TS_PACKET_BYTES + MDPM_MAX_BYTES];
+            int packetBytes = 0;
+            long bytesRead = 0;
+            long position = 0;
+            int overlap = 0;
+            while (position < TS_MAX_BYTES) {
+                int count = readFully(channel, chunk, 0, position,
+                        TS_CHUNK_PACKETS * (packetBytes == 0 ? M2TS_PACKET_BYTES : packetBytes));
+                if (count <= 0) break;
+
+                bytesRead += count;
+                if (packetBytes == 0) {
+                    packetBytes = packetBytes(chunk.array(), count);
+                    if (packetBytes == 0) break;
+                }
+                int packets = Math.min(count / packetBytes, TS_CHUNK_PACKETS);
+                int limit = overlap;
+                for (int packet = 0; packet < packets; packet++) {
+                    limit = appendVideoPayload(chunk.array(),
+                            packet * packetBytes + packetBytes - TS_PACKET_BYTES, payload, limit);
+                }
+                long time = findMdpmTime(payload, limit);
+                if (time != 0) {
+                    return new EmbeddedTimeReader.Result(time > 0 ? time : 0, bytesRead);
+                }
+                position += (long) packets * packetBytes;
+                // Keep the tail, so MDPM, split between chunks, is found also
+                overlap = Math.min(limit, MDPM_MAX_BYTES);
+                System.arraycopy(payload, limit - overlap, payload, 0, overlap);
+                if (packets < TS_CHUNK_PACKETS) break;
+            }
+            return new EmbeddedTimeReader.Result(0, bytesRead);
+        } catch (IOException | RuntimeException e) {
+            Log.error("Failed to read metadata of " + path + ", error: " + e);
+            return EmbeddedTimeReader.Result.EMPTY;
+        }
+    }
+
+    /**
+     * Packets of MPEG transport stream (TS) are of 188 bytes, of M2TS - of 192 bytes
+     * @return 0 if the first packets don't start with the sync byte
+     */
+    private static int packetBytes(byte[] bytes, int length) {
+        for (int packetBytes : new int[]{M2TS_PACKET_BYTES, TS_PACKET_BYTES}) {
+            int syncOffset = packetBytes - TS_PACKET_BYTES;
+            if (syncOffset >= length) continue;
+
+            boolean synced = true;
+            for (int ind = syncOffset; ind < length && ind < syncOffset + 3 * packetBytes; ind += packetBytes) {
+                if (bytes[ind] != TS_SYNC_BYTE) {
+                    synced = false;
+                    break;
+                }
+            }
+            if (synced) return packetBytes;
+        }
+        return 0;
+    }
+
+    /**
+     * Appends payload of the packet, starting with the sync byte at the start, if it belongs to the video stream.
+     * The adaptation field, if present, is skipped
+     * @return the new limit of the payload
+     */
+    private static int appendVideoPayload(byte[] bytes, int start, byte[] payload, int limit) {
+        if (bytes[start] != TS_SYNC_BYTE) return limit;
+
+        int pid = ((bytes[start + 1] & 0x1F) << 8) | (bytes[start + 2] & 0xFF);
+        if (pid != AVCHD_VIDEO_PID) return limit;
+
+        int adaptationFieldControl = (bytes[start + 3] >> 4) & 0x03;
+        if ((adaptationFieldControl & 0x01) == 0) return limit;
+
+        int payloadStart = start + TS_HEADER_BYTES;
+        if ((adaptationFieldControl & 0x02) != 0) {
+            payloadStart += 1 + (bytes[payloadStart] & 0xFF);
+        }
+        int length = start + TS_PACKET_BYTES - payloadStart;
+        if (length <= 0) return limit;
+
+        System.arraycopy(bytes, payloadStart, payload, limit, length);
+        return limit + length;
+    }
+
+    /**
+     * "MDPM" is followed by the number of entries, each entry is a tag and 4 bytes in BCD,
+     * except the first byte of the date entry, which is the time zone, see {@link #zoneOffset(byte)}.
+     * @return 0 if not found, -1 if found, but the time is absent or invalid
+     */
+    private static long findMdpmTime(byte[] bytes, int limit) {
+        for (int ind = 0; ind + MDPM.length < limit; ind++) {
+            if (bytes[ind] != MDPM[0] || bytes[ind + 1] != MDPM[1] || bytes[ind + 2] != MDPM[2]
+                    || bytes[ind + 3] != MDPM[3]) continue;
+
+            int entriesStart = ind + MDPM.length + 1;
+            int count = bytes[ind + MDPM.length] & 0xFF;
+            if (entriesStart + count * 5 > limit) return 0;
+
+            int[] date = null;
+            int[] time = null;
+            ZoneOffset offset = null;
+            for (int entry = entriesStart; entry < entriesStart + count * 5; entry += 5) {
+                int tag = bytes[entry] & 0xFF;
+                if (tag == TAG_DATE) {
+                    offset = zoneOffset(bytes[entry + 1]);
+                    date = new int[]{bcd(bytes[entry + 2]) * 100 + bcd(bytes[entry + 3]), bcd(bytes[entry + 4])};
+                } else if (tag == TAG_TIME) {
+                    time = new int[]{bcd(bytes[entry + 1]), bcd(bytes[entry + 2]), bcd(bytes[entry + 3]),
+                            bcd(bytes[entry + 4])};
+                }
+            }
+            if (date == null || time == null) return -1;
+            try {
+                LocalDateTime localTime = LocalDateTime.of(date[0], date[1], time[0], time[1], time[2], time[3]);
+                return (offset == null
+                        ? localTime.atZone(ZoneId.systemDefault()).toInstant()
+                        : localTime.toInstant(offset)).toEpochMilli();
+            } catch (DateTimeException e) {
+                return -1;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * The time zone byte: 0x80 - the zone is not set, 0x40 - DST, 0x20 - negative offset,
+     * 0x1E - hours of the offset, 0x01 - additional half an hour
+     * @return null if the zone is not set
+     */
+    @Nullable
+    private static ZoneOffset zoneOffset(byte value) {
+        if ((value & 0x80) != 0) return null;
+
+        int minutes = ((value >> 1) & 0x0F) * 60 + ((value & 0x01) != 0 ? 30 : 0);
+        if ((value & 0x20) != 0) {
+            minutes = -minutes;
+        }
+        if ((value & 0x40) != 0) {
+            minutes += 60;
+        }
+        return ZoneOffset.ofTotalSeconds(minutes * 60);
+    }
+
+    private static int bcd(byte value) {
+        return ((value >> 4) & 0x0F) * 10 + (value & 0x0F);
+    }
+
+    /**
+     * Positional read into the buffer, starting from the buffer's offset
+     * @return number of bytes read
+     */
+    private static int readFully(FileChannel channel, ByteBuffer buffer, int offset, long position, int length)
+            throws IOException {
+        // Buffer methods, as ByteBuffer overrides of them don't exist in Java 8
+        ((Buffer) buffer).clear();
+        ((Buffer) buffer).limit(offset + length).position(offset);
+        int total = 0;
+        while (buffer.hasRemaining()) {
+            int count = channel.read(buffer, position + total);
+            if (count < 0) break;
+            total += count;
+        }
+        return total;
+    }
+}
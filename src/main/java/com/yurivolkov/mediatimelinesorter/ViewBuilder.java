@@ -0,0 +1,115 @@
+package com.yurivolkov.mediatimelinesorter;
+/*
+ * Copyright (c) 2017 yvolk (Yuri Volkov), http://yurivolkov.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+
+/**
+ * Builds a sorted view: a directory with links to all files under their new names,
+ * so the originals are not renamed and no data is copied. Hard links are used,
+ * symbolic links if a hard link can't be created, e.g. across file systems.
+ * Times of links are not set, because a hard link shares its time with the original.
+ * The view may be deleted or rebuilt at any time: a previous view in the directory is replaced
+ */
+public class ViewBuilder {
+    /** Marks a directory as a view, so its links may be deleted */
+    static final String MARKER_FILE_NAME = Sorter.SERVICE_FILE_PREFIX + "view";
+    private static final int BATCH_SIZE = 1024;
+
+    @NotNull
+    private final Metrics metrics;
+    private final AtomicInteger hardLinksCount = new AtomicInteger();
+    private final AtomicInteger symbolicLinksCount = new AtomicInteger();
+    private final AtomicInteger failedCount = new AtomicInteger();
+
+    public ViewBuilder(@NotNull Metrics metrics) {
+        this.metrics = metrics;
+    }
+
+    /**
+     * Links are created in parallel batches, when invoked in a {@link java.util.concurrent.ForkJoinPool}
+     * @param viewDir see {@link #prepare(Path)}
+     * @param files new names of all files
+     */
+    public void build(@NotNull Path viewDir, @NotNull List<FileChange> files) {
+        int batchesCount = (files.size() + BATCH_SIZE - 1) / BATCH_SIZE;
+        IntStream.range(0, batchesCount).parallel().forEach(batch -> {
+            for (FileChange file : files.subList(batch * BATCH_SIZE, Math.min((batch + 1) * BATCH_SIZE, files.size()))) {
+                link(viewDir.resolve(file.fileName), file.source);
+            }
+        });
+        metrics.add(Metrics.LINKS, hardLinksCount.get() + symbolicLinksCount.get());
+        metrics.add(Metrics.FAILURES, failedCount.get());
+        Log.summary("Built the view " + viewDir + " of " + files.size() + " files, hard links: " +
+                hardLinksCount.get() + ", symbolic links: " + symbolicLinksCount.get() +
+                (failedCount.get() > 0 ? ", failed: " + failedCount.get() : ""));
+    }
+
+    /** Creates the view directory or deletes links of the previous view from it */
+    public static void prepare(@NotNull Path viewDir) throws IOException {
+        Path marker = viewDir.resolve(MARKER_FILE_NAME);
+        if (Files.isDirectory(viewDir) && !Files.exists(marker)) {
+            try (DirectoryStream<Path> stream = Files.newDirectoryStream(viewDir)) {
+                if (stream.iterator().hasNext()) {
+                    throw new IOException("Not a view and not empty: " + viewDir);
+                }
+            }
+        }
+        Files.createDirectories(viewDir);
+        List<Path> links = new ArrayList<>();
+        for (Path path : DirectoryScanner.listDir(viewDir)) {
+            if (!Files.isDirectory(path, LinkOption.NOFOLLOW_LINKS) && !path.equals(marker)) {
+                links.add(path);
+            }
+        }
+        for (Path link : links) {
+            Files.delete(link);
+        }
+        if (!Files.exists(marker)) {
+            Files.createFile(marker);
+        }
+        Log.summary("Deleted " + links.size() + " links of the previous view");
+    }
+
+    private void link(Path link, Path source) {
+        try {
+            Files.createLink(link, source);
+            hardLinksCount.incrementAndGet();
+            Log.change("Linked " + link + " to " + source);
+            return;
+        } catch (IOException | UnsupportedOperationException e) {
+            Log.trace(() -> "Failed to create a hard link " + link + ", error: " + e);
+        }
+        try {
+            Files.createSymbolicLink(link, source.toAbsolutePath());
+            symbolicLinksCount.incrementAndGet();
+            Log.change("Linked symbolically " + link + " to " + source);
+        } catch (IOException | UnsupportedOperationException e) {
+            failedCount.incrementAndGet();
+            Log.error("Failed to link " + link + " to " + source + ", error: " + e);
+        }
+    }
+}
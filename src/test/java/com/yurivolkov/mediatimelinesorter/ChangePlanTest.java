@@ -0,0 +1,56 @@
+package com.yurivolkov.mediatimelinesorter;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+import static org.junit.Assert.assertEquals;
+/*
+ * Copyright (c) 2017 yvolk (Yuri Volkov), http://yurivolkov.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+public class ChangePlanTest {
+    private final long baseTime = System.currentTimeMillis() / 1000 * 1000;
+
+    @Test
+    public void planAndApplyElsewhere() throws IOException {
+        Path dir = Paths.get("target/test-classes/test-plan");
+        TestFiles.deleteRecursively(dir);
+        Path computed = dir.resolve("workstation");
+        Path applied = dir.resolve("nas");
+        for (Path root : new Path[]{computed, applied}) {
+            addFile(root.resolve("yp"), "yp0038.jpg", 0);
+            addFile(root.resolve("yp"), "yp0039.mp4", -200);
+            addFile(root.resolve("yc"), "yc019.jpg", -500);
+            addFile(root.resolve("yc"), "yc021.mp4", -1000);
+        }
+        Path plan = dir.resolve("changes.plan");
+
+        Main.main(new String[]{computed.toString(), "--recursive", "--plan=" + plan});
+        assertEquals("Media files shouldn't change", TestFiles.listTree(applied), TestFiles.listTree(computed));
+
+        Main.main(new String[]{applied.toString(), "--apply=" + plan});
+        assertEquals("[yc/1-yc019.jpg, yc/2-yc021.mp4, yp/3-yp0038.jpg, yp/4-yp0039.mp4]",
+                TestFiles.listTree(applied).toString());
+        assertEquals(baseTime - 500 * 1000 + 1000,
+                Files.getLastModifiedTime(applied.resolve("yc/2-yc021.mp4")).toMillis());
+    }
+
+    private void addFile(Path dir, String fileName, int seconds) throws IOException {
+        TestFiles.addFile(dir, fileName, baseTime + seconds * 1000);
+    }
+}
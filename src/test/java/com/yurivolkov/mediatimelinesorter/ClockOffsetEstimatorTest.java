@@ -0,0 +1,118 @@
+package com.yurivolkov.mediatimelinesorter;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+/*
+ * Copyright (c) 2017 yvolk (Yuri Volkov), http://yurivolkov.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+public class ClockOffsetEstimatorTest {
+    private static final long START_TIME = 1500000000000L;
+
+    /** Devices shoot the same events, each with its own clock. The first device has the right clock */
+    @Test
+    public void offsetsOfManyDevices() {
+        Random random = new Random(23);
+        int devicesCount = 30;
+        long[] eventTimes = new long[600];
+        for (int event = 0; event < eventTimes.length; event++) {
+            eventTimes[event] = START_TIME + (long) (random.nextDouble() * 10 * 24 * 3600 * 1000);
+        }
+        Map<String, long[]> firmTimes = new HashMap<>();
+        long[] skews = new long[devicesCount];
+        Map<String, Long> skewsByKey = new HashMap<>();
+        int filesCount = 0;
+        for (int device = 0; device < devicesCount; device++) {
+            if (device > 0) {
+                long skew = (10 + random.nextInt(13 * 60)) * 60 * 1000L + random.nextInt(60) * 1000L;
+                skews[device] = random.nextBoolean() ? skew : -skew;
+            }
+            List<Long> times = new ArrayList<>();
+            for (long eventTime : eventTimes) {
+                if (random.nextDouble() < (device == 0 ? 0.9 : 0.3)) {
+                    for (int photo = random.nextInt(10); photo >= 0; photo--) {
+                        times.add(eventTime + random.nextInt(120) * 1000L + skews[device]);
+                    }
+                }
+            }
+            filesCount += times.size();
+            skewsByKey.put(TripGenerator.deviceKey(device), skews[device]);
+            firmTimes.put(TripGenerator.deviceKey(device), times.stream().mapToLong(Long::longValue).toArray());
+        }
+
+        long startedAt = System.currentTimeMillis();
+        List<ClockOffsetEstimator.Offset> offsets = new ClockOffsetEstimator(null).estimate(firmTimes);
+        long elapsed = System.currentTimeMillis() - startedAt;
+        assertTrue("Files: " + filesCount, filesCount > 30000);
+        assertTrue("Estimated in " + elapsed + " ms", elapsed < 5000);
+
+        assertEquals(offsets.toString(), devicesCount - 1, offsets.size());
+        for (ClockOffsetEstimator.Offset offset : offsets) {
+            long skew = skewsByKey.get(offset.sourceKey);
+            assertTrue(offset + ", skew: " + skew / 1000 + " s",
+                    Math.abs(offset.millis + skew) <= ClockOffsetEstimator.TOLERANCE_MILLIS);
+        }
+    }
+
+    /** Differences beyond the maximum offset are ignored also near the edge of the histogram */
+    @Test
+    public void offsetAtTheMaximum() {
+        long minute = 60 * 1000L;
+        long[] times = {START_TIME, START_TIME + 10 * minute, START_TIME + 20 * minute, START_TIME + 40 * minute};
+        long edge = ClockOffsetEstimator.MAX_OFFSET_MILLIS - minute / 2;
+        long[] referenceTimes = {times[0] + edge, times[1] + edge, times[2] + edge,
+                times[3] + ClockOffsetEstimator.MAX_OFFSET_MILLIS + minute / 2};
+        Map<String, long[]> firmTimes = new HashMap<>();
+        firmTimes.put("a", referenceTimes);
+        firmTimes.put("b", times);
+
+        List<ClockOffsetEstimator.Offset> offsets = new ClockOffsetEstimator("a").estimate(firmTimes);
+        assertEquals(offsets.toString(), 1, offsets.size());
+        assertEquals(edge, offsets.get(0).millis);
+    }
+
+    @Test
+    public void offsetIsApplied() throws IOException {
+        Path dir = Paths.get("target/test-classes/test-clock-offsets");
+        TestFiles.deleteRecursively(dir);
+        Files.createDirectories(dir);
+        for (int burst = 0; burst < 12; burst++) {
+            long burstTime = START_TIME + burst * 1200 * 1000L;
+            for (int photo = 0; photo < 3; photo++) {
+                TestFiles.addFile(dir, String.format("a%03d.jpg", burst * 3 + photo), burstTime + photo * 10000L);
+            }
+            for (int photo = 0; photo < 2; photo++) {
+                TestFiles.addFile(dir, String.format("b%03d.jpg", burst * 2 + photo), burstTime + photo * 10000L + 3600000L);
+            }
+        }
+        Main.main(new String[]{dir.toString(), "--clock-offsets=apply"});
+
+        List<String> names = TestFiles.listByGlobalOrder(dir);
+        assertEquals(names.toString(), "01-a000.jpg", names.get(0));
+        assertEquals(names.toString(), "02-b000.jpg", names.get(1));
+        assertEquals(START_TIME, Files.getLastModifiedTime(dir.resolve("02-b000.jpg")).toMillis());
+    }
+}
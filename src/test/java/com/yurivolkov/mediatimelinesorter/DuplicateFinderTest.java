@@ -0,0 +1,83 @@
+package com.yurivolkov.mediatimelinesorter;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.assertEquals;
+/*
+ * Copyright (c) 2017 yvolk (Yuri Volkov), http://yurivolkov.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+public class DuplicateFinderTest {
+    private static final int LARGE_SIZE = 300 * 1024;
+
+    @Test
+    public void onlyNeededBytesAreRead() throws IOException {
+        Path dir = Paths.get("target/test-classes/test-duplicates");
+        TestFiles.deleteRecursively(dir);
+        Files.createDirectories(dir);
+        Random random = new Random(24);
+        byte[] small = randomBytes(random, 100);
+        Files.write(dir.resolve("a.jpg"), small);
+        Files.write(dir.resolve("b.jpg"), small);
+        Files.write(dir.resolve("c.jpg"), randomBytes(random, 100));
+        byte[] large = randomBytes(random, LARGE_SIZE);
+        Files.write(dir.resolve("d.mp4"), large);
+        Files.write(dir.resolve("e.mp4"), large);
+        large[LARGE_SIZE / 2]++;
+        Files.write(dir.resolve("f.mp4"), large);
+        Files.write(dir.resolve("g.mp4"), randomBytes(random, LARGE_SIZE + 1));
+        Files.createFile(dir.resolve("h.jpg"));
+        Files.createFile(dir.resolve("i.jpg"));
+
+        Sorter sorter = new Sorter(Collections.singletonList(dir), false, 2);
+        List<MediaFile> files = sorter.getFiles();
+        List<List<MediaFile>> groups = new DuplicateFinder(sorter.getMetrics()).find(files);
+        assertEquals("[[a.jpg, b.jpg], [d.mp4, e.mp4]]", groups.stream()
+                .map(group -> group.stream().map(file -> file.path.getFileName().toString())
+                        .collect(Collectors.toList()))
+                .collect(Collectors.toList()).toString());
+        assertEquals("Small files are read once, large ones with the same sample twice",
+                3 * 100 + 3 * 2 * DuplicateFinder.SAMPLE_BYTES + 3 * LARGE_SIZE,
+                sorter.getMetrics().get(Metrics.BYTES_READ));
+    }
+
+    @Test
+    public void duplicatesAreExcluded() throws IOException {
+        Path dir = Paths.get("target/test-classes/test-duplicates-excluded");
+        TestFiles.deleteRecursively(dir);
+        Files.createDirectories(dir);
+        byte[] shot = randomBytes(new Random(25), 1000);
+        Files.write(dir.resolve("yp0038.jpg"), shot);
+        Files.write(dir.resolve("yp0039.jpg"), randomBytes(new Random(26), 1000));
+        Files.write(dir.resolve("zz0001.jpg"), shot);
+
+        Main.main(new String[]{dir.toString(), "--duplicates=exclude"});
+        assertEquals("[1-yp0038.jpg, 2-yp0039.jpg, zz0001.jpg]", TestFiles.listNames(dir).toString());
+    }
+
+    private static byte[] randomBytes(Random random, int size) {
+        byte[] bytes = new byte[size];
+        random.nextBytes(bytes);
+        return bytes;
+    }
+}
@@ -0,0 +1,137 @@
+package com.yurivolkov.mediatimelinesorter;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.LocalDateTime;
+import java.time.OffsetDateTime;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+/*
+ * Copyright (c) 2017 yvolk (Yuri Volkov), http://yurivolkov.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+public class ExifReaderTest {
+    private final Path dir = Paths.get("target/test-classes/test-exif");
+
+    @Test
+    public void jpegWithOffset() throws IOException {
+        Path path = write("with-offset.jpg", jpeg(tiff(ByteOrder.LITTLE_ENDIAN, "2020:07:18 21:07:25", "+03:00")));
+        long expected = OffsetDateTime.of(2020, 7, 18, 21, 7, 25, 0, ZoneOffset.ofHours(3)).toInstant().toEpochMilli();
+        assertEquals(expected, ExifReader.readDateTimeOriginal(path));
+    }
+
+    @Test
+    public void jpegInLocalTime() throws IOException {
+        Path path = write("local.jpg", jpeg(tiff(ByteOrder.BIG_ENDIAN, "2020:07:18 21:07:25", "")));
+        long expected = LocalDateTime.of(2020, 7, 18, 21, 7, 25)
+                .atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+        assertEquals(expected, ExifReader.readDateTimeOriginal(path));
+
+        MediaFile file = new MediaFile(path);
+        file.readEmbeddedTime();
+        assertEquals(expected, file.getBestTime());
+    }
+
+    @Test
+    public void rawTiff() throws IOException {
+        Path path = write("photo.raw", tiff(ByteOrder.LITTLE_ENDIAN, "2021:01:02 03:04:05", "-05:00"));
+        long expected = OffsetDateTime.of(2021, 1, 2, 3, 4, 5, 0, ZoneOffset.ofHours(-5)).toInstant().toEpochMilli();
+        assertEquals(expected, ExifReader.readDateTimeOriginal(path));
+    }
+
+    @Test
+    public void exifDirectoryBeyondSegmentLimit() throws IOException {
+        Path path = write("far-exif.raw", tiff(ByteOrder.BIG_ENDIAN, "2021:01:02 03:04:05", "+01:00", 1_000_000));
+        long expected = OffsetDateTime.of(2021, 1, 2, 3, 4, 5, 0, ZoneOffset.ofHours(1)).toInstant().toEpochMilli();
+        EmbeddedTimeReader.Result result = ExifReader.read(path);
+        assertEquals(expected, result.time);
+        assertTrue("Bytes before the directory shouldn't be read, bytes read: " + result.bytesRead,
+                result.bytesRead < 20000);
+    }
+
+    @Test
+    public void malformedOffset() throws IOException {
+        Path path = write("bad-offset.jpg", jpeg(tiff(ByteOrder.LITTLE_ENDIAN, "2020:07:18 21:07:25", "+99:00")));
+        long expected = LocalDateTime.of(2020, 7, 18, 21, 7, 25)
+                .atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+        assertEquals("Local time of the default time zone", expected, ExifReader.readDateTimeOriginal(path));
+        assertEquals(expected + 120, ExifReader.toMillis("2020:07:18 21:07:25", "12", "03:00 "));
+    }
+
+    @Test
+    public void noExif() throws IOException {
+        assertEquals(0, ExifReader.readDateTimeOriginal(write("no-exif.jpg", new byte[]{(byte) 0xFF, (byte) 0xD8,
+                (byte) 0xFF, (byte) 0xDA, 0, 2})));
+        assertEquals(0, ExifReader.readDateTimeOriginal(write("empty.jpg", new byte[0])));
+    }
+
+    private Path write(String name, byte[] bytes) throws IOException {
+        Files.createDirectories(dir);
+        Path path = dir.resolve(name);
+        Files.write(path, bytes);
+        return path;
+    }
+
+    /** SOI, a dummy APP0 segment, EXIF APP1 segment, then start of scan */
+    private static byte[] jpeg(byte[] tiff) {
+        ByteBuffer buffer = ByteBuffer.allocate(tiff.length + 40).order(ByteOrder.BIG_ENDIAN);
+        buffer.putShort((short) 0xFFD8);
+        buffer.putShort((short) 0xFFE0).putShort((short) 6).put("JFIF".getBytes(StandardCharsets.US_ASCII));
+        buffer.putShort((short) 0xFFE1).putShort((short) (tiff.length + 8))
+                .put("Exif\0\0".getBytes(StandardCharsets.US_ASCII)).put(tiff);
+        buffer.putShort((short) 0xFFDA).putShort((short) 2);
+        return Arrays.copyOf(buffer.array(), buffer.position());
+    }
+
+    private static byte[] tiff(ByteOrder order, String dateTime, String offset) {
+        return tiff(order, dateTime, offset, 26);
+    }
+
+    /** IFD0 with a pointer to the EXIF IFD, which has DateTimeOriginal and, optionally, OffsetTimeOriginal */
+    private static byte[] tiff(ByteOrder order, String dateTime, String offset, int exifIfd) {
+        ByteBuffer buffer = ByteBuffer.allocate(exifIfd + 200).order(order);
+        buffer.put(order == ByteOrder.LITTLE_ENDIAN ? (byte) 'I' : (byte) 'M');
+        buffer.put(order == ByteOrder.LITTLE_ENDIAN ? (byte) 'I' : (byte) 'M');
+        buffer.putShort((short) 42).putInt(8);
+        // IFD0 at 8
+        buffer.putShort((short) 1);
+        buffer.putShort((short) 0x8769).putShort((short) 4).putInt(1).putInt(exifIfd);
+        buffer.putInt(0);
+        buffer.position(exifIfd);
+        int entries = offset.isEmpty() ? 1 : 2;
+        int valuesStart = exifIfd + 2 + entries * 12 + 4;
+        buffer.putShort((short) entries);
+        buffer.putShort((short) 0x9003).putShort((short) 2).putInt(20).putInt(valuesStart);
+        if (!offset.isEmpty()) {
+            buffer.putShort((short) 0x9011).putShort((short) 2).putInt(7).putInt(valuesStart + 20);
+        }
+        buffer.putInt(0);
+        buffer.put((dateTime + "\0").getBytes(StandardCharsets.US_ASCII));
+        if (!offset.isEmpty()) {
+            buffer.put((offset + "\0").getBytes(StandardCharsets.US_ASCII));
+        }
+        return Arrays.copyOf(buffer.array(), buffer.position());
+    }
+}
@@ -0,0 +1,73 @@
+package com.yurivolkov.mediatimelinesorter;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+/*
+ * Copyright (c) 2017 yvolk (Yuri Volkov), http://yurivolkov.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+/** The external-memory pipeline gives the same names and times as the in-memory one */
+public class ExternalSorterTest {
+
+    @Test
+    public void sameAsInMemory() throws IOException {
+        assertSameAsInMemory(Numbering.DENSE);
+    }
+
+    @Test
+    public void sameAsInMemoryGapped() throws IOException {
+        assertSameAsInMemory(Numbering.gapped(Numbering.DEFAULT_STEP));
+    }
+
+    private static void assertSameAsInMemory(Numbering numbering) throws IOException {
+        Path dir = Paths.get("target/test-classes/test-external");
+        TestFiles.deleteRecursively(dir);
+        Path inMemory = dir.resolve("in-memory");
+        Path external = dir.resolve("external");
+        Path spill = Files.createDirectories(dir.resolve("spill"));
+        for (Path root : new Path[]{inMemory, external}) {
+            new TripGenerator()
+                    .setDevicesCount(5)
+                    .setFilesCount(2000)
+                    .setDirectoryPerDevice(true)
+                    .setSeed(20)
+                    .setStartTime(1500000000000L)
+                    .generate(root);
+        }
+
+        Sorter sorter = new Sorter(Collections.singletonList(inMemory), true, 1);
+        sorter.setNumbering(numbering);
+        List<MediaFile> files = sorter.getFiles();
+        sorter.fixFileTime(files);
+        sorter.sort(files);
+        sorter.saveChanges(files);
+
+        Sorter externalSorter = new Sorter(Collections.singletonList(external), true, 1);
+        externalSorter.setNumbering(numbering);
+        ExternalSorter externalSorting = new ExternalSorter(externalSorter, spill);
+        externalSorting.setChunkSize(300);
+        externalSorting.run();
+
+        assertEquals(TestFiles.describeTree(inMemory), TestFiles.describeTree(external));
+        assertEquals("Spilled files should be deleted", Collections.emptyList(), TestFiles.describeTree(spill));
+    }
+}
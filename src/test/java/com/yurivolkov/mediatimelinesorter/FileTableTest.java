@@ -0,0 +1,167 @@
+package com.yurivolkov.mediatimelinesorter;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.FileTime;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+/*
+ * Copyright (c) 2017 yvolk (Yuri Volkov), http://yurivolkov.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+public class FileTableTest {
+    private final long baseTime = System.currentTimeMillis();
+
+    @Test
+    public void sameResultsAsForListOfFiles() throws IOException {
+        Path listDir = createFiles("list");
+        Path tableDir = createFiles("table");
+
+        Sorter sorter = new Sorter(Collections.singletonList(listDir), false, 2);
+        List<MediaFile> files = sorter.getFiles();
+        sorter.fixFileTime(files);
+        sorter.sort(files);
+        sorter.saveChanges(files);
+
+        Sorter tableSorter = new Sorter(Collections.singletonList(tableDir), false, 2);
+        FileTable table = tableSorter.getFileTable();
+        assertEquals(files.size(), table.size());
+        assertEquals(4, table.timelineCount());
+        tableSorter.fixFileTime(table);
+        tableSorter.sort(table);
+        tableSorter.saveChanges(table);
+
+        assertEquals(TestFiles.describeTree(listDir), TestFiles.describeTree(tableDir));
+    }
+
+    @Test
+    public void embeddedTimesAsForListOfFiles() throws IOException {
+        Path listDir = createFiles("list-embedded");
+        Path tableDir = createFiles("table-embedded");
+        // Whole seconds, the recording time is stored so
+        long embeddedTime = (baseTime / 1000 - 400) * 1000;
+        addVideo(listDir, "yc030.mts", embeddedTime);
+        addVideo(tableDir, "yc030.mts", embeddedTime);
+
+        Sorter sorter = new Sorter(Collections.singletonList(listDir), false, 2);
+        sorter.setReadEmbeddedTime(true);
+        List<MediaFile> files = sorter.getFiles();
+        sorter.fixFileTime(files);
+        sorter.sort(files);
+        sorter.saveChanges(files);
+
+        Sorter tableSorter = new Sorter(Collections.singletonList(tableDir), false, 2);
+        tableSorter.setReadEmbeddedTime(true);
+        FileTable table = tableSorter.getFileTable();
+        tableSorter.fixFileTime(table);
+        tableSorter.sort(table);
+        tableSorter.saveChanges(table);
+
+        List<String> described = TestFiles.describeTree(tableDir);
+        assertEquals(TestFiles.describeTree(listDir), described);
+        assertTrue(described.toString(), described.stream().anyMatch(line -> line.endsWith("-yc030.mts " + embeddedTime)));
+    }
+
+    /** AVCHD video with the recording time in UTC, in packets of the video stream of 188 bytes */
+    private void addVideo(Path dir, String fileName, long time) throws IOException {
+        LocalDateTime utc = LocalDateTime.ofEpochSecond(time / 1000, 0, ZoneOffset.UTC);
+        ByteArrayOutputStream video = new ByteArrayOutputStream();
+        video.write(new byte[1000]);
+        video.write("MDPM".getBytes(StandardCharsets.US_ASCII));
+        video.write(new byte[]{2,
+                0x18, 0, bcd(utc.getYear() / 100), bcd(utc.getYear() % 100), bcd(utc.getMonthValue()),
+                0x19, bcd(utc.getDayOfMonth()), bcd(utc.getHour()), bcd(utc.getMinute()), bcd(utc.getSecond())});
+        video.write(new byte[184 - video.size() % 184]);
+        byte[] videoData = video.toByteArray();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (int position = 0; position < videoData.length; position += 184) {
+            out.write(new byte[]{0x47, 0x10, 0x11, 0x10});
+            out.write(videoData, position, 184);
+        }
+        Path path = dir.resolve(fileName);
+        Files.write(path, out.toByteArray());
+        Files.setLastModifiedTime(path, FileTime.fromMillis(baseTime + 5000 * 1000));
+    }
+
+    private static byte bcd(int value) {
+        return (byte) ((value / 10) << 4 | value % 10);
+    }
+
+    private Path createFiles(String dirName) throws IOException {
+        Path dir = Paths.get("target/test-classes/test-file-table").resolve(dirName);
+        if (Files.exists(dir)) {
+            try (Stream<Path> stream = Files.list(dir)) {
+                for (Path path : stream.collect(Collectors.toList())) {
+                    Files.delete(path);
+                }
+            }
+        } else {
+            Files.createDirectories(dir);
+        }
+        addFile(dir, "yp0038.jpg", 0);
+        addFile(dir, "yp0039.mp4", -200);
+        addFile(dir, "yp0040.mp4", -200);
+        addFile(dir, "yp0045.jpg", 300);
+        addFile(dir, "yc019.jpg", -500);
+        addFile(dir, "yc021.mp4", -1000);
+        addFile(dir, "yc050.mp4", -850);
+        addFile(dir, "pa1.mp4", 0);
+        addFile(dir, "pa2.mp4", -200);
+        addFile(dir, "pa3.jpg", -1010);
+        addFile(dir, "pa4.jpg", 300);
+        addFile(dir, "s1468.jpg", 100);
+        addFile(dir, "s1469.mp4", 10000);
+        addFile(dir, "s1470.jpg", 150);
+        return dir;
+    }
+
+    @Test
+    public void sortByKeyIsStable() {
+        Random random = new Random(17);
+        long[] keys = new long[1000];
+        for (int ind = 0; ind < keys.length; ind++) {
+            keys[ind] = random.nextInt(50);
+        }
+        Integer[] expected = new Integer[keys.length];
+        int[] rows = new int[keys.length];
+        for (int ind = 0; ind < keys.length; ind++) {
+            expected[ind] = ind;
+            rows[ind] = ind;
+        }
+        Arrays.sort(expected, 100, 900, Comparator.comparingLong(row -> keys[row]));
+        FileTable.sortByKey(rows, 100, 900, keys);
+        assertArrayEquals(Arrays.stream(expected).mapToInt(Integer::intValue).toArray(), rows);
+    }
+
+    private void addFile(Path dir, String fileName, int seconds) throws IOException {
+        TestFiles.addFile(dir, fileName, baseTime + seconds * 1000);
+    }
+}
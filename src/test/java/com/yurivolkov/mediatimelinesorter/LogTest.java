@@ -0,0 +1,57 @@
+package com.yurivolkov.mediatimelinesorter;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.assertEquals;
+/*
+ * Copyright (c) 2017 yvolk (Yuri Volkov), http://yurivolkov.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+public class LogTest {
+
+    @Test
+    public void levelsAndOrder() {
+        PrintStream out = System.out;
+        Log.Level level = Log.getLevel();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try {
+            Log.flush();
+            System.setOut(new PrintStream(bytes, true));
+            Log.setLevel(Log.Level.CHANGES);
+            Log.summary("one");
+            Log.trace(() -> {
+                throw new AssertionError("Shouldn't be built");
+            });
+            for (int ind = 2; ind < 10000; ind++) {
+                Log.change(Integer.toString(ind));
+            }
+            Log.setLevel(Log.Level.SUMMARY);
+            Log.change("skipped");
+            Log.summary("last");
+            Log.flush();
+        } finally {
+            System.setOut(out);
+            Log.setLevel(level);
+        }
+        String[] lines = new String(bytes.toByteArray(), StandardCharsets.UTF_8).split(System.lineSeparator());
+        assertEquals(10000, lines.length);
+        assertEquals("one", lines[0]);
+        assertEquals("5000", lines[4999]);
+        assertEquals("last", lines[9999]);
+    }
+}
@@ -0,0 +1,117 @@
+package com.yurivolkov.mediatimelinesorter;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.FileTime;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.assertEquals;
+/*
+ * Copyright (c) 2017 yvolk (Yuri Volkov), http://yurivolkov.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+public class MetadataCacheTest {
+    private static final long ISO_MEDIA_EPOCH_SECONDS = 2082844800L;
+    private final long baseTime = System.currentTimeMillis() / 1000 * 1000;
+
+    @Test
+    public void unchangedFilesAreNotRead() throws IOException {
+        Path dir = Paths.get("target/test-classes/test-metadata-cache");
+        if (Files.exists(dir)) {
+            try (Stream<Path> stream = Files.list(dir)) {
+                for (Path path : stream.collect(Collectors.toList())) {
+                    Files.delete(path);
+                }
+            }
+        } else {
+            Files.createDirectories(dir);
+        }
+        long videoTime = baseTime - 3600 * 1000;
+        Path video = dir.resolve("pv0001.mp4");
+        Files.write(video, movie(videoTime));
+        Files.setLastModifiedTime(video, FileTime.fromMillis(baseTime));
+        for (int ind = 2; ind < 200; ind++) {
+            Path path = dir.resolve(String.format("pv%04d.mp4", ind));
+            Files.write(path, new byte[ind]);
+            Files.setLastModifiedTime(path, FileTime.fromMillis(baseTime + ind * 1000));
+        }
+
+        MetadataCache cache = MetadataCache.load(dir);
+        List<MediaFile> files = getFiles(dir, cache);
+        assertEquals(199, files.size());
+        assertEquals(0, cache.getHitCount());
+        assertEquals(199, cache.getMissCount());
+        assertEquals(videoTime, files.get(0).getEmbeddedTime());
+        cache.save(files, Collections.emptySet());
+
+        // Same size and time, so the changed contents are not read
+        Files.write(video, new byte[movie(0).length]);
+        Files.setLastModifiedTime(video, FileTime.fromMillis(baseTime));
+        Files.setLastModifiedTime(dir.resolve("pv0100.mp4"), FileTime.fromMillis(baseTime));
+        cache = MetadataCache.load(dir);
+        files = getFiles(dir, cache);
+        assertEquals("Cache file is not a media file", 199, files.size());
+        assertEquals(198, cache.getHitCount());
+        assertEquals(1, cache.getMissCount());
+        assertEquals(videoTime, files.get(0).getEmbeddedTime());
+        cache.close();
+    }
+
+    @Test
+    public void keyedByTimeOnDisk() throws IOException {
+        Path dir = Paths.get("target/test-classes/test-metadata-cache-keys");
+        TestFiles.deleteRecursively(dir);
+        TestFiles.addFile(dir, "pv0001.mp4", baseTime);
+        TestFiles.addFile(dir, "pv0002.mp4", baseTime);
+
+        MetadataCache cache = MetadataCache.load(dir);
+        List<MediaFile> files = getFiles(dir, cache);
+        // Fixed times, e.g. for a view, aren't saved to the files
+        files.forEach(file -> file.setFileTime(baseTime + 60 * 1000));
+        cache.save(files, Collections.singleton(files.get(1).path));
+        Files.setLastModifiedTime(files.get(1).path, FileTime.fromMillis(baseTime + 60 * 1000));
+
+        cache = MetadataCache.load(dir);
+        getFiles(dir, cache);
+        assertEquals("Both the unchanged and the changed file are found", 2, cache.getHitCount());
+        cache.close();
+    }
+
+    private static List<MediaFile> getFiles(Path dir, MetadataCache cache) {
+        Sorter sorter = new Sorter(Collections.singletonList(dir), false, 2);
+        sorter.setReadEmbeddedTime(true);
+        sorter.setMetadataCache(cache);
+        List<MediaFile> files = sorter.getFiles();
+        files.sort((o1, o2) -> o1.name.name.compareTo(o2.name.name));
+        return files;
+    }
+
+    private static byte[] movie(long time) {
+        long seconds = time == 0 ? 0 : time / 1000 + ISO_MEDIA_EPOCH_SECONDS;
+        ByteBuffer buffer = ByteBuffer.allocate(36);
+        buffer.putInt(36).put("moov".getBytes(StandardCharsets.US_ASCII));
+        buffer.putInt(28).put("mvhd".getBytes(StandardCharsets.US_ASCII));
+        buffer.putInt(0).putInt((int) seconds).putInt((int) seconds).putInt(0).putInt(0);
+        return buffer.array();
+    }
+}
@@ -0,0 +1,75 @@
+package com.yurivolkov.mediatimelinesorter;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+/*
+ * Copyright (c) 2017 yvolk (Yuri Volkov), http://yurivolkov.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+public class MetricsTest {
+    private final long baseTime = System.currentTimeMillis();
+
+    @Test
+    public void phasesAndCounters() throws IOException {
+        Path dir = Paths.get("target/test-classes/test-metrics");
+        if (Files.exists(dir)) {
+            try (Stream<Path> stream = Files.list(dir)) {
+                for (Path path : stream.collect(Collectors.toList())) {
+                    Files.delete(path);
+                }
+            }
+        } else {
+            Files.createDirectories(dir);
+        }
+        addFile(dir, "yp0038.jpg", 0);
+        addFile(dir, "yp0039.mp4", -200);
+        addFile(dir, "yc019.jpg", -500);
+
+        Sorter sorter = new Sorter(Collections.singletonList(dir), false, 2);
+        List<MediaFile> files = sorter.getFiles();
+        sorter.fixFileTime(files);
+        sorter.sort(files);
+        sorter.saveChanges(files);
+
+        Metrics metrics = sorter.getMetrics();
+        assertEquals(3, metrics.get(Metrics.FILES_SCANNED));
+        assertEquals(3, metrics.get(Metrics.STAT_CALLS));
+        assertEquals(3, metrics.get(Metrics.RENAMES));
+        assertEquals(1, metrics.get(Metrics.TIME_CHANGES));
+        assertEquals(0, metrics.get(Metrics.FAILURES));
+        assertTrue(metrics.getSeconds("getFiles") > 0);
+
+        String json = metrics.toJson();
+        assertTrue(json, json.contains("\"saveChanges\": "));
+        assertTrue(json, json.contains("\"renames\": 3"));
+        String prometheus = metrics.toPrometheus();
+        assertTrue(prometheus, prometheus.contains("media_timeline_sorter_phase_seconds{phase=\"sort\"} "));
+        assertTrue(prometheus, prometheus.contains("\nmedia_timeline_sorter_files_scanned 3\n"));
+    }
+
+    private void addFile(Path dir, String fileName, int seconds) throws IOException {
+        TestFiles.addFile(dir, fileName, baseTime + seconds * 1000);
+    }
+}
@@ -0,0 +1,60 @@
+package com.yurivolkov.mediatimelinesorter;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+/*
+ * Copyright (c) 2017 yvolk (Yuri Volkov), http://yurivolkov.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+public class NumberingTest {
+
+    @Test
+    public void dense() {
+        long[] orders = Numbering.DENSE.assign(new long[]{0, 30, 10, 0});
+        assertArrayEquals(new long[]{1, 2, 3, 4}, orders);
+        assertEquals(1, Numbering.DENSE.calcNDigits(orders, 3));
+        assertEquals(0, Numbering.DENSE.calcNDigits(new long[0], 3));
+    }
+
+    @Test
+    public void gapped() {
+        Numbering numbering = Numbering.gapped(10);
+        long[] orders = numbering.assign(new long[]{0, 0, 0});
+        assertArrayEquals(new long[]{10, 20, 30}, orders);
+        assertEquals(2, numbering.calcNDigits(orders, 0));
+
+        // A new file is inserted into a gap, others keep their numbers
+        assertArrayEquals(new long[]{10, 15, 20, 30}, numbering.assign(new long[]{10, 0, 20, 30}));
+        assertArrayEquals(new long[]{5, 10, 20, 30}, numbering.assign(new long[]{0, 10, 20, 30}));
+        assertArrayEquals(new long[]{10, 20, 30, 40}, numbering.assign(new long[]{10, 20, 30, 0}));
+
+        // A moved file gets a new number, order of others is still valid
+        assertArrayEquals(new long[]{10, 20, 30, 40}, numbering.assign(new long[]{10, 20, 50, 40}));
+
+        // No room between 1 and 2: the next file is renumbered also
+        assertArrayEquals(new long[]{1, 10, 19, 30}, Numbering.gapped(10).assign(new long[]{1, 0, 2, 30}));
+
+        // Width doesn't shrink
+        assertEquals(4, numbering.calcNDigits(new long[]{10, 20}, 4));
+        assertEquals(3, numbering.calcNDigits(new long[]{10, 200}, 2));
+    }
+
+    @Test
+    public void longestIncreasing() {
+        boolean[] kept = Numbering.longestIncreasing(new long[]{5, 1, 2, 0, 8, 3, 4, 9});
+        assertArrayEquals(new boolean[]{false, true, true, false, false, true, true, true}, kept);
+    }
+}
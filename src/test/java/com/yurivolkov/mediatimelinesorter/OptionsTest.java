@@ -0,0 +1,61 @@
+package com.yurivolkov.mediatimelinesorter;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+/*
+ * Copyright (c) 2017 yvolk (Yuri Volkov), http://yurivolkov.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+public class OptionsTest {
+
+    @Test
+    public void unsupportedCombinationsAreRejected() {
+        assertRejected("--external can't be combined with --plan", "--external", "--plan=changes.plan");
+        assertRejected("--external can't be combined with --state", "--external", "--state");
+        assertRejected("--external can't be combined with --watch", "--external", "--watch");
+        assertRejected("--external can't be combined with --duplicates", "--external", "--duplicates=report");
+        assertRejected("--external can't be combined with --clock-offsets", "--external", "--clock-offsets=apply");
+        assertRejected("--external can't be combined with --view", "--external", "--view=view");
+        assertRejected("--external can't be combined with --compact", "--external", "--compact");
+        assertRejected("--apply can't be combined with --plan", "--apply=changes.plan", "--plan=other.plan");
+        assertRejected("--apply can't be combined with --view", "--apply=changes.plan", "--view=view");
+        assertRejected("--apply can't be combined with --watch", "--apply=changes.plan", "--watch");
+        assertRejected("--apply can't be combined with --external", "--apply=changes.plan", "--external");
+        assertRejected("--apply can't be combined with --compact", "--apply=changes.plan", "--compact");
+        assertRejected("--apply can't be combined with --state", "--apply=changes.plan", "--state");
+        assertRejected("--apply can't be combined with --read-metadata", "--apply=changes.plan", "--read-metadata");
+        assertRejected("--apply can't be combined with --duplicates", "--apply=changes.plan", "--duplicates=exclude");
+        assertRejected("--apply can't be combined with --clock-offsets", "--apply=changes.plan",
+                "--clock-offsets=propose");
+        assertRejected("--plan can't be combined with --view", "--plan=changes.plan", "--view=view");
+        assertRejected("--plan can't be combined with --watch", "--plan=changes.plan", "--watch");
+        assertRejected("--plan can't be combined with --state", "--plan=changes.plan", "--state");
+        assertRejected("--clock-offsets=apply can't be combined with --watch", "--clock-offsets=apply", "--watch");
+        assertRejected("--compact can't be combined with --state", "--compact", "--state");
+        assertRejected("--compact can't be combined with --watch", "--compact", "--watch");
+        assertRejected("--compact can't be combined with --duplicates", "--compact", "--duplicates=report");
+        assertRejected("--view can't be combined with --watch", "--view=view", "--watch");
+    }
+
+    private static void assertRejected(String message, String... args) {
+        try {
+            Options.parse(args);
+            fail("Should be rejected: " + String.join(" ", args));
+        } catch (IllegalArgumentException e) {
+            assertEquals(message, e.getMessage());
+        }
+    }
+}
@@ -2,6 +2,8 @@ package com.yurivolkov.mediatimelinesorter;
 
 import org.junit.Test;
 
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
 import java.util.TimeZone;
 
 import static org.junit.Assert.assertEquals;
@@ -44,7 +46,7 @@ public class ParsedNameTest {
         assertEquals(hasSourceTimeline, parsedName.hasSourceTimeline());
         assertEquals(sourceKey, parsedName.sourceKey);
         assertEquals(sourceOrder, parsedName.sourceOrder);
-        assertEquals(extension, parsedName.extension);
+        assertEquals(extension, parsedName.getExtension());
     }
 
     @Test
@@ -71,6 +73,18 @@ public class ParsedNameTest {
         assertOneTime("yp003-20200718_210725910.MP.jpg", expectedTime + 910);
     }
 
+    @Test
+    public void parseTimeAsSimpleDateFormat() throws ParseException {
+        SimpleDateFormat format = new SimpleDateFormat("yyyyMMdd_HHmmssSSSX");
+        for (String time : new String[]{"20200718_210725910", "20200229_235959999", "21000301_000000000",
+                "20201399_996199999", "20200000_000000000", "15821004_120000000"}) {
+            assertOneTime("yp003-" + time + ".jpg", format.parse(time + "+00").getTime());
+        }
+        assertOneTime("yp003-2020071a_210725910.jpg", 0);
+        assertOneTime("yp003-20200718-210725910.jpg", 0);
+        assertOneTime("yp12", 0);
+    }
+
     private void assertOneTime(String name, long parsedTime) {
         ParsedName parsedName = ParsedName.parse(name);
         assertEquals(parsedName.toString(), parsedTime, parsedName.parsedTime);
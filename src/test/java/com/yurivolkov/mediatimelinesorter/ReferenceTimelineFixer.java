@@ -0,0 +1,120 @@
+package com.yurivolkov.mediatimelinesorter;
+/*
+ * Copyright (c) 2017 yvolk (Yuri Volkov), http://yurivolkov.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/**
+ * The original quadratic {@link TimelineFixer}, which rescans for the next firm file,
+ * kept as a reference for the differential test
+ */
+class ReferenceTimelineFixer {
+
+    private ReferenceTimelineFixer() {
+        // Empty
+    }
+
+    static void fix(Timeline files) {
+        int indFirmPrev = -1;
+        int indFirmNext = -1;
+        int ind = 0;
+        while ( ind >= 0 && ind < files.size()) {
+            if (ind >= indFirmNext) {
+                indFirmNext = indFirmNext(indFirmPrev, files);
+            }
+            if (files.hasFirmTime(ind)) {
+                if (indFirmPrev >= 0 && files.getBestTime(indFirmPrev) > files.getBestTime(ind)) {
+                    throw new IllegalStateException("file " + files.toString(indFirmPrev) +
+                            " is older than " + files.toString(ind));
+                }
+                files.tryToSetTimeFromName(ind);
+                indFirmPrev = ind;
+            } else if (
+                    ind > 0 && files.getBestTime(ind - 1) > files.getBestTime(ind) ||
+                    indFirmNext > 0 && files.getBestTime(indFirmNext) < files.getBestTime(ind)
+                ) {
+                ind = fixFileTimesTillNextFirm(indFirmPrev, indFirmNext, files);
+            }
+            ind++;
+        }
+    }
+
+    private static int indFirmNext(int indFirmPrev, Timeline files) {
+        int ind1 = indFirmPrev + 1;
+        while (ind1 < files.size()) {
+            if (files.hasFirmTime(ind1)) {
+                return ind1;
+            }
+            ind1++;
+        }
+        return -1;
+    }
+
+    private static int fixFileTimesTillNextFirm(int indFirmPrev, int indFirmNext, Timeline files) {
+        long timeFrom = indFirmPrev < 0 ? 0 : files.getFileTime(indFirmPrev);
+        long timeTo = indFirmNext < 0 ? 0 : files.getBestTime(indFirmNext) - 1000 * (indFirmNext - indFirmPrev);
+        if (timeTo < 0) {
+            timeTo = 0;
+        }
+        if (timeTo > 0 && timeTo < timeFrom ) {
+            timeTo = timeFrom + files.getBestTime(indFirmNext);
+        }
+        long timeShiftForward = -1;
+        if (indFirmPrev >= 0 && indFirmPrev < (files.size() - 1)) {
+            timeShiftForward = files.getBestTime(indFirmPrev) - files.getBestTime(indFirmPrev + 1) + 1000;
+        }
+        long timeShiftBack = -1;
+        if (indFirmNext > 0) {
+            timeShiftBack = files.getBestTime(indFirmNext - 1) + 1000 - files.getBestTime(indFirmNext);
+        }
+        if (timeShiftForward > 0) {
+            long fileTimePrev = timeFrom;
+            for (int ind2 = indFirmPrev + 1; ind2 < (indFirmNext >= 0 ? indFirmNext : files.size()); ind2++) {
+                long fileTime = files.getBestTime(ind2) + timeShiftForward;
+                if (fileTime <= fileTimePrev) {
+                    fileTime = fileTimePrev + 1000;
+                }
+                if (timeFrom > 0 && fileTime <= timeFrom) {
+                    fileTime = timeFrom;
+                    timeFrom += 1000;
+                }
+                if (timeTo > 0 && fileTime >= timeTo) {
+                    fileTime = timeTo;
+                    timeTo += 1000;
+                }
+                files.setFileTime(ind2, fileTime);
+                fileTimePrev = fileTime;
+            }
+        } else if (timeShiftBack > 0) {
+            long fileTimePrev = timeFrom;
+            for (int ind2 = indFirmPrev + 1; ind2 < (indFirmNext >= 0 ? indFirmNext : files.size()); ind2++) {
+                long fileTime = files.getBestTime(ind2) - timeShiftBack;
+                if (fileTime <= fileTimePrev) {
+                    fileTime = fileTimePrev + 1000;
+                }
+                if (timeFrom > 0 && fileTime <= timeFrom) {
+                    fileTime = timeFrom;
+                    timeFrom += 1000;
+                }
+                if (timeTo > 0 && fileTime >= timeTo) {
+                    fileTime = timeTo;
+                    timeTo += 1000;
+                }
+                files.setFileTime(ind2, fileTime);
+                fileTimePrev = fileTime;
+            }
+        }
+        return indFirmNext < 0 ? files.size() : indFirmNext - 1;
+    }
+}
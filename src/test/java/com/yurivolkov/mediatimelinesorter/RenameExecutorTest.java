@@ -0,0 +1,97 @@
+package com.yurivolkov.mediatimelinesorter;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.assertEquals;
+/*
+ * Copyright (c) 2017 yvolk (Yuri Volkov), http://yurivolkov.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+public class RenameExecutorTest {
+    private final long baseTime = System.currentTimeMillis() / 1000 * 1000;
+
+    @Test
+    public void chainsAndCycles() throws Exception {
+        Path dir = Paths.get("target/test-classes/test-rename-executor");
+        if (Files.exists(dir)) {
+            try (Stream<Path> stream = Files.list(dir)) {
+                for (Path path : stream.collect(Collectors.toList())) {
+                    Files.delete(path);
+                }
+            }
+        } else {
+            Files.createDirectories(dir);
+        }
+        List<FileChange> changes = new ArrayList<>();
+        // A chain: each target is held by the next file
+        changes.add(change(dir, "5-x.jpg", "6-x.jpg", 0));
+        changes.add(change(dir, "6-x.jpg", "7-x.jpg", 0));
+        changes.add(change(dir, "7-x.jpg", "8-x.jpg", 10));
+        // A cycle
+        changes.add(change(dir, "1-y.jpg", "2-y.jpg", 20));
+        changes.add(change(dir, "2-y.jpg", "3-y.jpg", 0));
+        changes.add(change(dir, "3-y.jpg", "1-y.jpg", 0));
+        // The target is held by a file, which doesn't move
+        Files.write(dir.resolve("2-z.jpg"), "2-z.jpg".getBytes(StandardCharsets.UTF_8));
+        changes.add(change(dir, "1-z.jpg", "2-z.jpg", 0));
+        // Time only
+        changes.add(change(dir, "1-t.jpg", "1-t.jpg", 30));
+
+        RenameExecutor.Result result = new ForkJoinPool(4).submit(() -> new RenameExecutor().execute(changes)).get();
+        assertEquals(7, result.savedCount);
+        assertEquals(1, result.failedCount);
+
+        assertContent(dir, "6-x.jpg", "5-x.jpg");
+        assertContent(dir, "7-x.jpg", "6-x.jpg");
+        assertContent(dir, "8-x.jpg", "7-x.jpg");
+        assertEquals(baseTime + 10, Files.getLastModifiedTime(dir.resolve("8-x.jpg")).toMillis());
+        assertContent(dir, "2-y.jpg", "1-y.jpg");
+        assertEquals(baseTime + 20, Files.getLastModifiedTime(dir.resolve("2-y.jpg")).toMillis());
+        assertContent(dir, "3-y.jpg", "2-y.jpg");
+        assertContent(dir, "1-y.jpg", "3-y.jpg");
+        assertContent(dir, "1-z.jpg", "1-z.jpg");
+        assertContent(dir, "2-z.jpg", "2-z.jpg");
+        assertEquals(baseTime + 30, Files.getLastModifiedTime(dir.resolve("1-t.jpg")).toMillis());
+        try (Stream<Path> stream = Files.list(dir)) {
+            assertEquals(Arrays.asList("1-t.jpg", "1-y.jpg", "1-z.jpg", "2-y.jpg", "2-z.jpg", "3-y.jpg",
+                    "6-x.jpg", "7-x.jpg", "8-x.jpg"),
+                    stream.map(path -> path.getFileName().toString()).sorted().collect(Collectors.toList()));
+        }
+    }
+
+    /** Each file contains its initial name */
+    private FileChange change(Path dir, String name, String newName, long timeShift) throws IOException {
+        Path path = dir.resolve(name);
+        Files.write(path, name.getBytes(StandardCharsets.UTF_8));
+        Files.setLastModifiedTime(path, FileTime.fromMillis(baseTime));
+        return new FileChange(path, newName, baseTime, baseTime + timeShift);
+    }
+
+    private static void assertContent(Path dir, String name, String content) throws IOException {
+        assertEquals(name, content, new String(Files.readAllBytes(dir.resolve(name)), StandardCharsets.UTF_8));
+    }
+}
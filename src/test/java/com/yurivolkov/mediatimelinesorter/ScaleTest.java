@@ -0,0 +1,103 @@
+package com.yurivolkov.mediatimelinesorter;
+
+import org.junit.Assume;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+/*
+ * Copyright (c) 2017 yvolk (Yuri Volkov), http://yurivolkov.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+/**
+ * The whole {@link Main} pipeline on a generated trip with budgets for time and heap.
+ * Runs only, if the number of files is set by the "scaleTest.files" system property,
+ * e.g. mvn test -Dtest=ScaleTest -DscaleTest.files=100000
+ */
+public class ScaleTest {
+    private static final int FILES_COUNT = Integer.getInteger("scaleTest.files", 0);
+    /**
+     * Generous budgets, so the test fails on regressions, not on a slow machine.
+     * Fixed parts cover the JVM and the test itself, so small runs pass too
+     */
+    private static final long TIME_BUDGET_MILLIS = 5_000L + 55_000L * FILES_COUNT / 100000;
+    private static final long HEAP_BUDGET_BYTES = 64L * 1024 * 1024 + 336L * 1024 * 1024 * FILES_COUNT / 100000;
+
+    @Test
+    public void wholePipeline() throws IOException {
+        Assume.assumeTrue("The number of files is not set", FILES_COUNT > 0);
+        Path dir = Paths.get("target/test-classes/test-scale");
+        TestFiles.deleteRecursively(dir);
+        List<TripGenerator.GeneratedFile> generated = new TripGenerator()
+                .setDevicesCount(12)
+                .setFilesCount(FILES_COUNT)
+                .setDirectoryPerDevice(true)
+                .generate(dir);
+
+        System.gc();
+        ManagementFactory.getMemoryPoolMXBeans().forEach(MemoryPoolMXBean::resetPeakUsage);
+        long startedAt = System.currentTimeMillis();
+        Main.main(new String[]{dir.toString(), "--recursive", "--log=summary"});
+        long elapsed = System.currentTimeMillis() - startedAt;
+        long peakHeap = ManagementFactory.getMemoryPoolMXBeans().stream()
+                .filter(pool -> pool.getType() == MemoryType.HEAP)
+                .mapToLong(pool -> pool.getPeakUsage().getUsed()).sum();
+        System.out.println("Sorted " + FILES_COUNT + " files in " + elapsed + " ms, peak heap: " +
+                peakHeap / 1024 / 1024 + " MB");
+
+        // Times of other files are guessed by TimelineFixer, so only firm files are sure to keep their order
+        Map<String, Long> lastGlobalOrders = new HashMap<>();
+        int sortedCount = 0;
+        for (ParsedName name : listNames(dir)) {
+            assertTrue("Not renamed: " + name.name, name.globalOrder > 0);
+            if (MediaFile.isFirmTimeExtension(name.getExtension()) || name.parsedTime > 0) {
+                Long lastGlobalOrder = lastGlobalOrders.put(name.sourceKey, name.globalOrder);
+                assertTrue("Source order is broken at " + name.name,
+                        lastGlobalOrder == null || lastGlobalOrder < name.globalOrder);
+            }
+            sortedCount++;
+        }
+        assertEquals(generated.size(), sortedCount);
+        assertTrue("Time " + elapsed + " ms is over the budget " + TIME_BUDGET_MILLIS + " ms",
+                elapsed < TIME_BUDGET_MILLIS);
+        assertTrue("Peak heap " + peakHeap + " is over the budget " + HEAP_BUDGET_BYTES,
+                peakHeap < HEAP_BUDGET_BYTES);
+        TestFiles.deleteRecursively(dir);
+    }
+
+    /** @return names of all files, sorted by their source timelines and orders in them */
+    private static List<ParsedName> listNames(Path dir) throws IOException {
+        try (Stream<Path> stream = Files.walk(dir)) {
+            return stream.filter(Files::isRegularFile)
+                    .map(path -> ParsedName.parse(path.getFileName().toString()))
+                    .sorted(Comparator.comparing((ParsedName name) -> name.sourceKey)
+                            .thenComparingLong(name -> name.sourceOrder))
+                    .collect(Collectors.toList());
+        }
+    }
+}
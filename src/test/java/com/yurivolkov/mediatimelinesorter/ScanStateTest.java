@@ -0,0 +1,84 @@
+package com.yurivolkov.mediatimelinesorter;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.FileTime;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+/*
+ * Copyright (c) 2017 yvolk (Yuri Volkov), http://yurivolkov.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+public class ScanStateTest {
+    private final long baseTime = System.currentTimeMillis();
+
+    @Test
+    public void unchangedTimelines() throws IOException {
+        Path dir = Paths.get("target/test-classes/test-scan-state");
+        if (Files.exists(dir)) {
+            try (Stream<Path> stream = Files.list(dir)) {
+                for (Path path : stream.collect(Collectors.toList())) {
+                    Files.delete(path);
+                }
+            }
+        } else {
+            Files.createDirectories(dir);
+        }
+        addFile(dir, "yp0038.jpg", 0);
+        addFile(dir, "yp0039.mp4", -200);
+        addFile(dir, "yc019.jpg", -500);
+        addFile(dir, "yc021.mp4", -1000);
+
+        ScanState state = ScanState.load(dir);
+        assertEquals(0, state.size());
+        Sorter sorter = new Sorter(Collections.singletonList(dir), false, 2);
+        sorter.setScanState(state);
+        List<MediaFile> files = sorter.getFiles();
+        sorter.fixFileTime(files);
+        sorter.sort(files);
+        sorter.saveChanges(files);
+        state.save(files);
+
+        Path yc = addFile(dir, "yc022.mp4", -900);
+        ScanState loaded = ScanState.load(dir);
+        assertEquals(4, loaded.size());
+        files = sorter.getFiles();
+        assertEquals("State file is not a media file", 5, files.size());
+        Map<String, List<MediaFile>> timelines = sorter.getSourceOrderedTimelines(files);
+        assertTrue(loaded.isUnchanged("yp", timelines.get("yp")));
+        assertFalse(loaded.isUnchanged("yc", timelines.get("yc")));
+
+        Files.delete(yc);
+        Files.setLastModifiedTime(timelines.get("yp").get(0).path, FileTime.fromMillis(baseTime + 5000));
+        files = sorter.getFiles();
+        timelines = sorter.getSourceOrderedTimelines(files);
+        assertFalse(loaded.isUnchanged("yp", timelines.get("yp")));
+        assertTrue(loaded.isUnchanged("yc", timelines.get("yc")));
+    }
+
+    private Path addFile(Path dir, String fileName, int seconds) throws IOException {
+        return TestFiles.addFile(dir, fileName, baseTime + seconds * 1000);
+    }
+}
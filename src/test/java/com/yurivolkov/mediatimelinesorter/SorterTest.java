@@ -10,9 +10,12 @@ import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.nio.file.attribute.FileTime;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 /*
@@ -35,15 +38,14 @@ public class SorterTest {
 
     @Test
     public void calcNDigits() throws Exception {
-        Sorter sorter = new Sorter(Paths.get(""));
-        assertEquals(0, sorter.calcNDigits(0));
-        assertEquals(1, sorter.calcNDigits(1));
-        assertEquals(1, sorter.calcNDigits(9));
-        assertEquals(2, sorter.calcNDigits(10));
-        assertEquals(2, sorter.calcNDigits(99));
-        assertEquals(3, sorter.calcNDigits(100));
-        assertEquals(3, sorter.calcNDigits(999));
-        assertEquals(4, sorter.calcNDigits(1000));
+        assertEquals(0, Sorter.calcNDigits(0));
+        assertEquals(1, Sorter.calcNDigits(1));
+        assertEquals(1, Sorter.calcNDigits(9));
+        assertEquals(2, Sorter.calcNDigits(10));
+        assertEquals(2, Sorter.calcNDigits(99));
+        assertEquals(3, Sorter.calcNDigits(100));
+        assertEquals(3, Sorter.calcNDigits(999));
+        assertEquals(4, Sorter.calcNDigits(1000));
     }
 
     @Test
@@ -92,7 +94,7 @@ public class SorterTest {
 
         listDir(testFilesToChange);
 
-        Sorter sorter = new Sorter(testFilesToChange);
+        Sorter sorter = new Sorter(testFilesToChange, 4);
         List<MediaFile> files = sorter.getFiles();
         sorter.fixFileTime(files);
         sorter.sort(files);
@@ -131,6 +133,63 @@ public class SorterTest {
         assertTrue(ri057s + " vs " + ri058s, ri057s.name.globalOrder < ri058s.name.globalOrder);
     }
 
+    @Test
+    public void mediaFileIndex() throws Exception {
+        Path dir = Paths.get("target/test-classes/test-files-index");
+        TestFiles.deleteRecursively(dir);
+        Files.createDirectories(dir);
+        List<MediaFile> added = Arrays.asList(
+                addFile(dir, "yp0038.jpg", 0),
+                addFile(dir, "yc019.jpg", -500),
+                addFile(dir, "056-ri055-IMG_6392.JPG", -2),
+                addFile(dir, "057-ri058-IMG_6401.JPG", 98));
+
+        Sorter sorter = new Sorter(dir, 4);
+        List<MediaFile> files = sorter.getFiles();
+        sorter.fixFileTime(files);
+        sorter.sort(files);
+        sorter.saveChanges(files);
+
+        files = sorter.getFiles();
+        MediaFileIndex index = new MediaFileIndex(files);
+        assertEquals(files.size(), index.size());
+        List<MediaFile> found = index.getSameFiles(added);
+        for (int ind = 0; ind < added.size(); ind++) {
+            MediaFile file = added.get(ind);
+            assertEquals(file.toString(), file.getSameFile(files), found.get(ind));
+            assertEquals(file.toString(), file.getSameFile(files), file.getSameFile(index));
+        }
+        MediaFile absent = new MediaFile(dir.resolve("yp0039.mp4"));
+        assertNull(index.getSameFiles(Collections.singletonList(absent)).get(0));
+        assertEquals("notFound.txt", absent.getSameFile(index).path.getFileName().toString());
+    }
+
+    @Test
+    public void recursiveMultipleRoots() throws Exception {
+        Path testRoots = Paths.get("target/test-classes/test-roots");
+        TestFiles.deleteRecursively(testRoots);
+        Path phone = Files.createDirectories(testRoots.resolve("yuri/phone"));
+        Path camera = Files.createDirectories(testRoots.resolve("pavel/2020/camera"));
+
+        addFile(phone, "yp0001.jpg", 0);
+        addFile(phone, "yp0002.mp4", 10);
+        addFile(camera, "pc001.jpg", 5);
+
+        Sorter sorter = new Sorter(Arrays.asList(testRoots.resolve("yuri"), testRoots.resolve("pavel")), true, 2);
+        List<MediaFile> files = sorter.getFiles();
+        assertEquals(files.toString(), 3, files.size());
+        sorter.fixFileTime(files);
+        sorter.sort(files);
+        sorter.saveChanges(files);
+
+        assertTrue(Files.exists(phone.resolve("1-yp0001.jpg")));
+        assertTrue(Files.exists(camera.resolve("2-pc001.jpg")));
+        assertTrue(Files.exists(phone.resolve("3-yp0002.mp4")));
+
+        Sorter flatSorter = new Sorter(Collections.singletonList(testRoots.resolve("yuri")), false, 2);
+        assertTrue(flatSorter.getFiles().isEmpty());
+    }
+
     private void assertTime(List<MediaFile> files, MediaFile file, int seconds) {
         assertEquals(file.toString(), seconds * 1000, file.getSameFile(files).getFileTime() - baseTime);
     }
@@ -0,0 +1,104 @@
+package com.yurivolkov.mediatimelinesorter;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+/*
+ * Copyright (c) 2017 yvolk (Yuri Volkov), http://yurivolkov.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+/**
+ * Creates, lists and deletes files in test directories
+ */
+final class TestFiles {
+
+    private TestFiles() {
+        // Empty
+    }
+
+    /** Creates an empty file, and its directory if needed, with the modification time */
+    static Path addFile(Path dir, String fileName, long time) throws IOException {
+        Files.createDirectories(dir);
+        Path path = Files.createFile(dir.resolve(fileName));
+        Files.setLastModifiedTime(path, FileTime.fromMillis(time));
+        return path;
+    }
+
+    /** @return sorted names of files and directories in the directory, except service files of the sorter */
+    static List<String> listNames(Path dir) throws IOException {
+        try (Stream<Path> stream = Files.list(dir)) {
+            return stream.map(path -> path.getFileName().toString())
+                    .filter(name -> !Sorter.isServiceFile(name))
+                    .sorted()
+                    .collect(Collectors.toList());
+        }
+    }
+
+    /** @return names of files in the directory, sorted by their global order, see {@link ParsedName} */
+    static List<String> listByGlobalOrder(Path dir) throws IOException {
+        try (Stream<Path> stream = Files.list(dir)) {
+            return stream.sorted(Comparator.comparing(path -> ParsedName.parse(path.getFileName().toString())
+                    .globalOrder))
+                    .map(path -> path.getFileName().toString())
+                    .collect(Collectors.toList());
+        }
+    }
+
+    /** @return sorted paths of all files under the root, relative to it */
+    static List<String> listTree(Path root) throws IOException {
+        try (Stream<Path> stream = Files.walk(root)) {
+            return stream.filter(Files::isRegularFile)
+                    .map(path -> relativize(root, path))
+                    .sorted()
+                    .collect(Collectors.toList());
+        }
+    }
+
+    /** @return sorted relative paths of all files under the root, each followed by its modification time */
+    static List<String> describeTree(Path root) throws IOException {
+        try (Stream<Path> stream = Files.walk(root)) {
+            return stream.filter(Files::isRegularFile)
+                    .map(path -> {
+                        try {
+                            return relativize(root, path) + " " + Files.getLastModifiedTime(path).toMillis();
+                        } catch (IOException e) {
+                            throw new IllegalStateException(e);
+                        }
+                    })
+                    .sorted()
+                    .collect(Collectors.toList());
+        }
+    }
+
+    private static String relativize(Path root, Path path) {
+        return root.relativize(path).toString().replace('\\', '/');
+    }
+
+    static void deleteRecursively(Path dir) throws IOException {
+        if (!Files.exists(dir)) return;
+
+        List<Path> paths;
+        try (Stream<Path> stream = Files.walk(dir)) {
+            paths = stream.sorted(Comparator.reverseOrder()).collect(Collectors.toList());
+        }
+        for (Path path : paths) {
+            Files.delete(path);
+        }
+    }
+}
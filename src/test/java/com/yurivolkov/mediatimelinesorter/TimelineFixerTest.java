@@ -0,0 +1,160 @@
+package com.yurivolkov.mediatimelinesorter;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+/*
+ * Copyright (c) 2017 yvolk (Yuri Volkov), http://yurivolkov.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+public class TimelineFixerTest {
+
+    /** Differential test: the linear fixer gives the same times as the reference one on random timelines */
+    @Test
+    public void sameAsReference() {
+        Random random = new Random(21);
+        int failedCount = 0;
+        int fixedCount = 0;
+        for (int iteration = 0; iteration < 20000; iteration++) {
+            ArrayTimeline timeline = ArrayTimeline.random(random, 1 + random.nextInt(40));
+            long[] initialTimes = timeline.fileTimes.clone();
+            ArrayTimeline expected = timeline.copy();
+            String expectedError = fixOrError(expected, true);
+            String error = fixOrError(timeline, false);
+            assertEquals("Iteration " + iteration, expectedError, error);
+            assertArrayEquals("Iteration " + iteration + ", " + Arrays.toString(expected.fileTimes),
+                    expected.fileTimes, timeline.fileTimes);
+            if (error != null) {
+                failedCount++;
+            } else if (!Arrays.equals(initialTimes, timeline.fileTimes)) {
+                fixedCount++;
+            }
+        }
+        assertEquals("Failed: " + failedCount + ", fixed: " + fixedCount, true,
+                failedCount > 1000 && fixedCount > 1000);
+    }
+
+    /** A long video timeline after one photo, the reference fixer takes quadratic time on it */
+    @Test(timeout = 10000)
+    public void linearOnLongTimelines() {
+        int size = 1000000;
+        ArrayTimeline timeline = new ArrayTimeline(size);
+        timeline.parsedTimes[0] = 2000000000000L;
+        for (int ind = 0; ind < size; ind++) {
+            timeline.fileTimes[ind] = 1000000000000L + ind * 1000L;
+        }
+        TimelineFixer.fix(timeline);
+        for (int ind = 1; ind < size; ind++) {
+            assertEquals(true, timeline.fileTimes[ind] > timeline.fileTimes[ind - 1]);
+        }
+    }
+
+    private static String fixOrError(ArrayTimeline timeline, boolean reference) {
+        try {
+            if (reference) {
+                ReferenceTimelineFixer.fix(timeline);
+            } else {
+                TimelineFixer.fix(timeline);
+            }
+            return null;
+        } catch (IllegalStateException e) {
+            return e.getMessage();
+        }
+    }
+
+    /** Firm files are the ones with time in their names or of firm extensions, as for {@link MediaFile} */
+    private static class ArrayTimeline implements Timeline {
+        final long[] parsedTimes;
+        final boolean[] firmExtensions;
+        final long[] fileTimes;
+
+        ArrayTimeline(int size) {
+            parsedTimes = new long[size];
+            firmExtensions = new boolean[size];
+            fileTimes = new long[size];
+        }
+
+        static ArrayTimeline random(Random random, int size) {
+            ArrayTimeline timeline = new ArrayTimeline(size);
+            long time = 1500000000000L;
+            for (int ind = 0; ind < size; ind++) {
+                time += random.nextInt(120) * 1000L;
+                switch (random.nextInt(4)) {
+                    case 0:
+                        timeline.parsedTimes[ind] = time - random.nextInt(3) * 20000L;
+                        break;
+                    case 1:
+                        timeline.firmExtensions[ind] = true;
+                        break;
+                    default:
+                        break;
+                }
+                // E.g. time of copying or editing of a video
+                timeline.fileTimes[ind] = !timeline.hasFirmTime(ind) && random.nextInt(3) == 0
+                        ? time + (random.nextInt(7200) - 3600) * 1000L
+                        : time;
+            }
+            return timeline;
+        }
+
+        ArrayTimeline copy() {
+            ArrayTimeline copy = new ArrayTimeline(size());
+            System.arraycopy(parsedTimes, 0, copy.parsedTimes, 0, size());
+            System.arraycopy(firmExtensions, 0, copy.firmExtensions, 0, size());
+            System.arraycopy(fileTimes, 0, copy.fileTimes, 0, size());
+            return copy;
+        }
+
+        @Override
+        public int size() {
+            return fileTimes.length;
+        }
+
+        @Override
+        public boolean hasFirmTime(int index) {
+            return parsedTimes[index] > 0 || firmExtensions[index];
+        }
+
+        @Override
+        public long getBestTime(int index) {
+            return parsedTimes[index] > 0 ? parsedTimes[index] : fileTimes[index];
+        }
+
+        @Override
+        public long getFileTime(int index) {
+            return fileTimes[index];
+        }
+
+        @Override
+        public void setFileTime(int index, long fileTime) {
+            fileTimes[index] = fileTime;
+        }
+
+        @Override
+        public void tryToSetTimeFromName(int index) {
+            if (parsedTimes[index] > 0) {
+                fileTimes[index] = parsedTimes[index];
+            }
+        }
+
+        @Override
+        public String toString(int index) {
+            return index + ":" + getBestTime(index);
+        }
+    }
+}
@@ -0,0 +1,65 @@
+package com.yurivolkov.mediatimelinesorter;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.junit.Assert.assertEquals;
+/*
+ * Copyright (c) 2017 yvolk (Yuri Volkov), http://yurivolkov.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+public class TimelineMergerTest {
+
+    @Test
+    public void sameAsStableSort() {
+        Random random = new Random(7);
+        for (int iteration = 0; iteration < 500; iteration++) {
+            int size = random.nextInt(200);
+            int timelinesCount = 1 + random.nextInt(10);
+            long[] times = new long[size];
+            int[] timelineOfRow = new int[size];
+            long[] lastTimes = new long[timelinesCount];
+            for (int row = 0; row < size; row++) {
+                int id = random.nextInt(timelinesCount);
+                timelineOfRow[row] = id;
+                // Mostly ordered timelines with equal times, and some out of order
+                lastTimes[id] += random.nextInt(5) == 0 ? -random.nextInt(3) : random.nextInt(3);
+                times[row] = lastTimes[id];
+            }
+            int[] starts = new int[timelinesCount + 1];
+            List<Integer> grouped = new ArrayList<>();
+            for (int id = 0; id < timelinesCount; id++) {
+                starts[id] = grouped.size();
+                for (int row = 0; row < size; row++) {
+                    if (timelineOfRow[row] == id) grouped.add(row);
+                }
+            }
+            starts[timelinesCount] = size;
+            int[] rows = grouped.stream().mapToInt(Integer::intValue).toArray();
+
+            List<Integer> merged = new ArrayList<>();
+            TimelineMerger.merge(rows, starts, times, merged::add);
+            List<Integer> expected = IntStream.range(0, size).boxed()
+                    .sorted(Comparator.comparingLong(row -> times[row]))
+                    .collect(Collectors.toList());
+            assertEquals("Iteration " + iteration, expected, merged);
+        }
+    }
+}
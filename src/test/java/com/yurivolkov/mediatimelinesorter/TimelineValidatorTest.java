@@ -0,0 +1,83 @@
+package com.yurivolkov.mediatimelinesorter;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+/*
+ * Copyright (c) 2017 yvolk (Yuri Volkov), http://yurivolkov.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+public class TimelineValidatorTest {
+    private final long baseTime = System.currentTimeMillis() / 1000 * 1000;
+
+    @Test
+    public void allInversionsAreFound() throws IOException {
+        Path dir = createFiles("test-validator-stop");
+        Sorter sorter = new Sorter(Collections.singletonList(dir), false, 2);
+        List<MediaFile> files = sorter.getFiles();
+        try {
+            sorter.fixFileTime(files);
+            fail("Should stop on inversions");
+        } catch (TimelineValidator.ConflictException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("found in 2 timelines"));
+        }
+        assertEquals(2, sorter.getMetrics().get(Metrics.INVERSIONS));
+        files.forEach(file -> assertEquals(file.toString(), file.fileTimeInitial, file.getFileTime()));
+
+        TimelineValidator validator = new TimelineValidator(TimelineValidator.OnConflict.STOP);
+        validator.validate("yc", Timeline.of(files.subList(0, 4)));
+        assertEquals(1, validator.getInversionCount());
+        assertTrue(validator.isSkipped("yc"));
+    }
+
+    @Test
+    public void inconsistentTimelinesAreSkipped() throws IOException {
+        Path dir = createFiles("test-validator-skip");
+        Main.main(new String[]{dir.toString(), "--conflicts=skip", "--compact"});
+        assertEquals("Inconsistent timelines are sorted as they are",
+                "[1-yc001.jpg, 2-yp02.jpg, 3-yc003.jpg, 4-yc002.jpg, 5-zz1.jpg, 6-zz2.mp4, 7-zz3.jpg, 8-yc004.jpg, " +
+                "9-yp01.jpg]", TestFiles.listByGlobalOrder(dir).toString());
+        assertEquals("Consistent timelines are fixed", baseTime + 298 * 1000,
+                Files.getLastModifiedTime(dir.resolve("6-zz2.mp4")).toMillis());
+    }
+
+    private Path createFiles(String dirName) throws IOException {
+        Path dir = Paths.get("target/test-classes").resolve(dirName);
+        TestFiles.deleteRecursively(dir);
+        Files.createDirectories(dir);
+        addFile(dir, "yc001.jpg", 0);
+        addFile(dir, "yc002.jpg", 100);
+        addFile(dir, "yc003.jpg", 50);
+        addFile(dir, "yc004.jpg", 500);
+        addFile(dir, "yp01.jpg", 600);
+        addFile(dir, "yp02.jpg", 10);
+        addFile(dir, "zz1.jpg", 200);
+        addFile(dir, "zz2.mp4", 400);
+        addFile(dir, "zz3.jpg", 300);
+        return dir;
+    }
+
+    private void addFile(Path dir, String fileName, int seconds) throws IOException {
+        TestFiles.addFile(dir, fileName, baseTime + seconds * 1000);
+    }
+}
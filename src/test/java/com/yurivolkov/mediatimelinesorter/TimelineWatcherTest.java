@@ -0,0 +1,156 @@
+package com.yurivolkov.mediatimelinesorter;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.FileTime;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.assertEquals;
+/*
+ * Copyright (c) 2017 yvolk (Yuri Volkov), http://yurivolkov.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+public class TimelineWatcherTest {
+    private final long baseTime = System.currentTimeMillis() / 1000 * 1000;
+
+    @Test
+    public void spliceNewFile() throws IOException {
+        Path dir = Paths.get("target/test-classes/test-watcher");
+        if (Files.exists(dir)) {
+            try (Stream<Path> stream = Files.list(dir)) {
+                for (Path path : stream.collect(Collectors.toList())) {
+                    Files.delete(path);
+                }
+            }
+        } else {
+            Files.createDirectories(dir);
+        }
+        addFile(dir, "yp0010.jpg", 0);
+        addFile(dir, "yp0020.jpg", 100);
+        addFile(dir, "yc0010.jpg", 50);
+        addFile(dir, "yc0020.mp4", 120);
+
+        Sorter sorter = new Sorter(Collections.singletonList(dir), false, 2);
+        sorter.setNumbering(Numbering.gapped(Numbering.DEFAULT_STEP));
+        List<MediaFile> files = sorter.getFiles();
+        sorter.fixFileTime(files);
+        sorter.sort(files);
+        sorter.saveChanges(files);
+        assertEquals("[10-yp0010.jpg, 20-yc0010.jpg, 30-yp0020.jpg, 40-yc0020.mp4]", TestFiles.listNames(dir).toString());
+
+        TimelineWatcher watcher = new TimelineWatcher(sorter, sorter.getFiles());
+        // A video, copied later, has the time of copying
+        Path added = addFile(dir, "yp0015.mp4", 1000);
+        long renamesBefore = sorter.getMetrics().get(Metrics.RENAMES);
+        watcher.process(Collections.singletonList(added), Collections.emptyList());
+        assertEquals("[10-yp0010.jpg, 20-yc0010.jpg, 25-yp0015.mp4, 30-yp0020.jpg, 40-yc0020.mp4]", TestFiles.listNames(dir).toString());
+        assertEquals("Only the new file is renamed", 1, sorter.getMetrics().get(Metrics.RENAMES) - renamesBefore);
+        assertEquals(baseTime + 98 * 1000, Files.getLastModifiedTime(dir.resolve("25-yp0015.mp4")).toMillis());
+
+        // Events of the sorter's own renames are ignored
+        watcher.process(Collections.singletonList(dir.resolve("25-yp0015.mp4")),
+                Collections.singletonList(added));
+        assertEquals(5, watcher.size());
+        assertEquals(1, sorter.getMetrics().get(Metrics.RENAMES) - renamesBefore);
+
+        Files.delete(dir.resolve("20-yc0010.jpg"));
+        watcher.process(Collections.emptyList(), Collections.singletonList(dir.resolve("20-yc0010.jpg")));
+        assertEquals(4, watcher.size());
+    }
+
+    @Test
+    public void startFromFilesInMemory() throws IOException {
+        Path dir = Paths.get("target/test-classes/test-watcher-memory");
+        if (Files.exists(dir)) {
+            try (Stream<Path> stream = Files.list(dir)) {
+                for (Path path : stream.collect(Collectors.toList())) {
+                    Files.delete(path);
+                }
+            }
+        } else {
+            Files.createDirectories(dir);
+        }
+        addFile(dir, "yp0010.jpg", 0);
+        addFile(dir, "yp0020.jpg", 100);
+        addFile(dir, "yc0010.jpg", 50);
+
+        Sorter sorter = new Sorter(Collections.singletonList(dir), false, 2);
+        sorter.setNumbering(Numbering.gapped(Numbering.DEFAULT_STEP));
+        List<MediaFile> files = sorter.getFiles();
+        // As if excluded from numbering, e.g. as a duplicate
+        files.removeIf(file -> file.name.name.equals("yc0010.jpg"));
+        sorter.fixFileTime(files);
+        sorter.sort(files);
+        List<FileChange> changes = sorter.saveChanges(files).changes;
+        assertEquals("[10-yp0010.jpg, 20-yp0020.jpg, yc0010.jpg]", TestFiles.listNames(dir).toString());
+
+        TimelineWatcher watcher = new TimelineWatcher(sorter, files, changes);
+        assertEquals("The excluded file stays excluded", 2, watcher.size());
+        long renamesBefore = sorter.getMetrics().get(Metrics.RENAMES);
+        watcher.process(Collections.singletonList(dir.resolve("20-yp0020.jpg")), Collections.emptyList());
+        assertEquals("Renamed files are known by their new paths", 2, watcher.size());
+        assertEquals(0, sorter.getMetrics().get(Metrics.RENAMES) - renamesBefore);
+    }
+
+    @Test
+    public void duplicatesOfKnownFilesAndSavedState() throws IOException {
+        Path dir = Paths.get("target/test-classes/test-watcher-duplicates");
+        TestFiles.deleteRecursively(dir);
+        addFile(dir, "yp0010.jpg", 0, "first");
+        addFile(dir, "yp0020.jpg", 100, "second");
+
+        Sorter sorter = new Sorter(Collections.singletonList(dir), false, 2);
+        sorter.setNumbering(Numbering.gapped(Numbering.DEFAULT_STEP));
+        sorter.setDuplicatesMode(DuplicateFinder.Mode.EXCLUDE);
+        sorter.setScanState(ScanState.load(dir));
+        List<MediaFile> files = sorter.getFiles();
+        sorter.findDuplicates(files);
+        sorter.fixFileTime(files);
+        sorter.sort(files);
+        List<FileChange> changes = sorter.saveChanges(files).changes;
+        TimelineWatcher watcher = new TimelineWatcher(sorter, files, changes);
+
+        Path copy = addFile(dir, "yc0030.jpg", 200, "first");
+        watcher.process(Collections.singletonList(copy), Collections.emptyList());
+        assertEquals("A copy of a known file is excluded", 2, watcher.size());
+        // E.g. its modification
+        watcher.process(Collections.singletonList(copy), Collections.emptyList());
+        assertEquals(2, watcher.size());
+        assertEquals("[10-yp0010.jpg, 20-yp0020.jpg, yc0030.jpg]", TestFiles.listNames(dir).toString());
+
+        watcher.process(Collections.singletonList(addFile(dir, "yc0040.jpg", 300, "third")),
+                Collections.emptyList());
+        assertEquals(3, watcher.size());
+        assertEquals("The state is saved after each batch", 3, ScanState.load(dir).size());
+    }
+
+    private Path addFile(Path dir, String fileName, int seconds, String content) throws IOException {
+        Path path = addFile(dir, fileName, seconds);
+        Files.write(path, content.getBytes(StandardCharsets.UTF_8));
+        Files.setLastModifiedTime(path, FileTime.fromMillis(baseTime + seconds * 1000));
+        return path;
+    }
+
+    private Path addFile(Path dir, String fileName, int seconds) throws IOException {
+        return TestFiles.addFile(dir, fileName, baseTime + seconds * 1000);
+    }
+}
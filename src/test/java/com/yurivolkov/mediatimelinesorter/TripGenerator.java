@@ -0,0 +1,171 @@
+package com.yurivolkov.mediatimelinesorter;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+/*
+ * Copyright (c) 2017 yvolk (Yuri Volkov), http://yurivolkov.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+/**
+ * Creates empty media files of a trip, as if they were shot by several devices at the same time period
+ * and prepared as described in README: "keyNNNN-" prefixes and file times, set to the time of shooting.
+ * Results are reproducible for the same seed.
+ */
+public class TripGenerator {
+    private static final DateTimeFormatter TIME_IN_NAME = DateTimeFormatter.ofPattern("yyyyMMdd_HHmmssSSS")
+            .withZone(ZoneOffset.UTC);
+
+    private int devicesCount = 4;
+    private int filesCount = 1000;
+    /** Max difference of a device clock from the real time */
+    private long maxClockSkewMillis = 10 * 60 * 1000;
+    /** Share of photos (files with firm time) among all files */
+    private double firmShare = 0.7;
+    /** Share of files without firm time, which times are shifted out of their order */
+    private double outOfOrderShare = 0.1;
+    /** Share of files, which names have time, e.g. "IMG_20200718_210725123.jpg" */
+    private double timeInNameShare = 0.2;
+    /** Put files of each device into a subdirectory */
+    private boolean directoryPerDevice = false;
+    private long startTime = 1595095645000L;
+    private long seed = 1;
+
+    /** Describes a generated file */
+    public static class GeneratedFile {
+        public final Path path;
+        public final String sourceKey;
+        public final long sourceOrder;
+        /** The real time of shooting */
+        public final long time;
+
+        GeneratedFile(Path path, String sourceKey, long sourceOrder, long time) {
+            this.path = path;
+            this.sourceKey = sourceKey;
+            this.sourceOrder = sourceOrder;
+            this.time = time;
+        }
+    }
+
+    public TripGenerator setDevicesCount(int devicesCount) {
+        this.devicesCount = devicesCount;
+        return this;
+    }
+
+    public TripGenerator setFilesCount(int filesCount) {
+        this.filesCount = filesCount;
+        return this;
+    }
+
+    public TripGenerator setMaxClockSkewMillis(long maxClockSkewMillis) {
+        this.maxClockSkewMillis = maxClockSkewMillis;
+        return this;
+    }
+
+    public TripGenerator setFirmShare(double firmShare) {
+        this.firmShare = firmShare;
+        return this;
+    }
+
+    public TripGenerator setOutOfOrderShare(double outOfOrderShare) {
+        this.outOfOrderShare = outOfOrderShare;
+        return this;
+    }
+
+    public TripGenerator setTimeInNameShare(double timeInNameShare) {
+        this.timeInNameShare = timeInNameShare;
+        return this;
+    }
+
+    public TripGenerator setDirectoryPerDevice(boolean directoryPerDevice) {
+        this.directoryPerDevice = directoryPerDevice;
+        return this;
+    }
+
+    public TripGenerator setStartTime(long startTime) {
+        this.startTime = startTime;
+        return this;
+    }
+
+    public TripGenerator setSeed(long seed) {
+        this.seed = seed;
+        return this;
+    }
+
+    /**
+     * Device times: real time plus the device clock skew. Each device shoots at its own pace,
+     * so the files of all devices are interleaved in time
+     */
+    public List<GeneratedFile> generate(Path dir) throws IOException {
+        Random random = new Random(seed);
+        Files.createDirectories(dir);
+        String[] keys = new String[devicesCount];
+        long[] skews = new long[devicesCount];
+        long[] times = new long[devicesCount];
+        int[] orders = new int[devicesCount];
+        Path[] dirs = new Path[devicesCount];
+        for (int device = 0; device < devicesCount; device++) {
+            keys[device] = deviceKey(device);
+            skews[device] = maxClockSkewMillis == 0 ? 0
+                    : (long) ((random.nextDouble() * 2 - 1) * maxClockSkewMillis) / 1000 * 1000;
+            times[device] = startTime + random.nextInt(3600) * 1000L;
+            dirs[device] = directoryPerDevice ? Files.createDirectories(dir.resolve(keys[device])) : dir;
+        }
+        int nDigits = Math.max(4, Sorter.calcNDigits(filesCount));
+        List<GeneratedFile> files = new ArrayList<>(filesCount);
+        for (int ind = 0; ind < filesCount; ind++) {
+            int device = random.nextInt(devicesCount);
+            times[device] += 1000 + random.nextInt(120) * 1000L;
+            long deviceTime = times[device] + skews[device];
+            boolean firm = random.nextDouble() < firmShare;
+            String extension = firm ? "jpg" : "mp4";
+            String originalName;
+            if (random.nextDouble() < timeInNameShare) {
+                originalName = (firm ? "IMG_" : "VID_") + TIME_IN_NAME.format(Instant.ofEpochMilli(deviceTime));
+            } else {
+                originalName = String.format(firm ? "DSC-%05d" : "MOV-%05d", ind);
+            }
+            long fileTime = deviceTime;
+            if (!firm && random.nextDouble() < outOfOrderShare) {
+                // E.g. time of copying or editing of a video
+                fileTime += (random.nextInt(7200) - 3600) * 1000L;
+            }
+            orders[device]++;
+            String fileName = String.format("%s%0" + nDigits + "d-%s.%s", keys[device], orders[device],
+                    originalName, extension);
+            Path path = Files.createFile(dirs[device].resolve(fileName));
+            Files.setLastModifiedTime(path, FileTime.fromMillis(fileTime));
+            files.add(new GeneratedFile(path, keys[device], orders[device], times[device]));
+        }
+        return files;
+    }
+
+    /** Alphabetic keys: "a", "b", ..., "z", "ba", "bb"... */
+    static String deviceKey(int device) {
+        StringBuilder builder = new StringBuilder();
+        int value = device;
+        do {
+            builder.insert(0, (char) ('a' + value % 26));
+            value /= 26;
+        } while (value > 0);
+        return builder.toString();
+    }
+}
@@ -0,0 +1,201 @@
+package com.yurivolkov.mediatimelinesorter;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.LocalDateTime;
+import java.time.OffsetDateTime;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+/*
+ * Copyright (c) 2017 yvolk (Yuri Volkov), http://yurivolkov.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+public class VideoMetadataReaderTest {
+    private static final long ISO_MEDIA_EPOCH_SECONDS = 2082844800L;
+    private static final int MEDIA_DATA_BYTES = 1024 * 1024;
+    private static final int TS_PACKET_BYTES = 188;
+    private static final int M2TS_PACKET_BYTES = 192;
+    private static final int VIDEO_PID = 0x1011;
+    private static final int AUDIO_PID = 0x1100;
+    private final Path dir = Paths.get("target/test-classes/test-video");
+
+    @Test
+    public void movieHeaderAfterMediaData() throws IOException {
+        long expected = OffsetDateTime.of(2019, 5, 6, 7, 8, 9, 0, ZoneOffset.UTC).toInstant().toEpochMilli();
+        byte[] moov = box("moov", box("mvhd", fullBoxTime(0, expected)),
+                box("trak", box("tkhd", fullBoxTime(0, expected + 5000))));
+        Path path = write("movie.mp4", concat(box("ftyp", "isom".getBytes(StandardCharsets.US_ASCII)),
+                largeBox("mdat", new byte[MEDIA_DATA_BYTES]), moov));
+
+        EmbeddedTimeReader.Result result = EmbeddedTimeReader.readWithStats(path, "MP4");
+        assertEquals(expected, result.time);
+        assertTrue("Media data shouldn't be read, bytes read: " + result.bytesRead, result.bytesRead < 200);
+    }
+
+    @Test
+    public void trackHeaderFallback() throws IOException {
+        long expected = OffsetDateTime.of(2021, 12, 31, 23, 59, 58, 0, ZoneOffset.UTC).toInstant().toEpochMilli();
+        byte[] moov = box("moov", box("mvhd", fullBoxTime(1, 0)),
+                box("trak", box("tkhd", fullBoxTime(1, expected))));
+        Path path = write("clip.mov", concat(box("ftyp", "qt  ".getBytes(StandardCharsets.US_ASCII)), moov,
+                box("mdat", new byte[100])));
+        assertEquals(expected, EmbeddedTimeReader.read(path, "mov"));
+    }
+
+    @Test
+    public void noMovieBox() throws IOException {
+        Path path = write("broken.mp4", concat(box("ftyp", new byte[4]), new byte[]{0, 0, 0x10, 0, 'm', 'd'}));
+        assertEquals(0, EmbeddedTimeReader.read(path, "mp4"));
+        assertEquals(0, EmbeddedTimeReader.read(write("empty.mp4", new byte[0]), "mp4"));
+    }
+
+    @Test
+    public void avchdRecordingTime() throws IOException {
+        Path path = write("00001.MTS", m2ts(mdpm(20000, (byte) 0x80, 3)));
+        long expected = LocalDateTime.of(2018, 8, 15, 13, 45, 59)
+                .atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+        assertEquals("Unknown time zone", expected, EmbeddedTimeReader.read(path, "MTS"));
+        assertEquals(0, EmbeddedTimeReader.read(write("00002.MTS", new byte[50000]), "MTS"));
+    }
+
+    @Test
+    public void avchdTimeZone() throws IOException {
+        LocalDateTime localTime = LocalDateTime.of(2018, 8, 15, 13, 45, 59);
+        assertEquals(localTime.toInstant(ZoneOffset.ofHours(1)).toEpochMilli(),
+                EmbeddedTimeReader.read(write("00003.MTS", m2ts(mdpm(20000, (byte) 0x02, 3))), "MTS"));
+        assertEquals("Negative offset with DST", localTime.toInstant(ZoneOffset.ofHours(-4)).toEpochMilli(),
+                EmbeddedTimeReader.read(write("00004.MTS", m2ts(mdpm(20000, (byte) 0x6A, 3))), "MTS"));
+        assertEquals("Half an hour", localTime.toInstant(ZoneOffset.ofHoursMinutes(5, 30)).toEpochMilli(),
+                EmbeddedTimeReader.read(write("00005.MTS", m2ts(mdpm(20000, (byte) 0x0B, 3))), "MTS"));
+    }
+
+    @Test
+    public void avchdEntriesSplitBetweenChunks() throws IOException {
+        // Many entries, which don't fit into the video payload of the first chunk of 88 packets,
+        // half of them are audio packets
+        Path path = write("00006.MTS", m2ts(mdpm(7500, (byte) 0x00, 200)));
+        assertEquals(LocalDateTime.of(2018, 8, 15, 13, 45, 59).toInstant(ZoneOffset.UTC).toEpochMilli(),
+                EmbeddedTimeReader.read(path, "MTS"));
+    }
+
+    @Test
+    public void avchdMdpmSplitBetweenPackets() throws IOException {
+        // The first packet has an adaptation field, so its payload is 176 bytes,
+        // the next packet, followed by the packet of the audio stream, has the rest of "MDPM"
+        Path path = write("00007.m2ts", transportStream(mdpm(174, (byte) 0x00, 3), TS_PACKET_BYTES));
+        assertEquals(LocalDateTime.of(2018, 8, 15, 13, 45, 59).toInstant(ZoneOffset.UTC).toEpochMilli(),
+                EmbeddedTimeReader.read(path, "M2TS"));
+    }
+
+    private static byte[] m2ts(byte[] videoData) {
+        return transportStream(videoData, M2TS_PACKET_BYTES);
+    }
+
+    /**
+     * Packets of the video stream with the data as their payload, every third packet has an adaptation field.
+     * Each video packet is followed by a packet of the audio stream
+     */
+    private static byte[] transportStream(byte[] videoData, int packetBytes) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        int position = 0;
+        for (int packet = 0; position < videoData.length; packet++) {
+            int adaptationBytes = Math.max(packet % 3 == 0 ? 8 : 0, 184 - (videoData.length - position));
+            writePacket(out, packetBytes, VIDEO_PID, packet, adaptationBytes, videoData, position);
+            position += 184 - adaptationBytes;
+            writePacket(out, packetBytes, AUDIO_PID, packet, 0, new byte[184], 0);
+        }
+        return out.toByteArray();
+    }
+
+    private static void writePacket(ByteArrayOutputStream out, int packetBytes, int pid, int counter,
+                                    int adaptationBytes, byte[] data, int offset) {
+        out.write(new byte[packetBytes - TS_PACKET_BYTES], 0, packetBytes - TS_PACKET_BYTES);
+        out.write(0x47);
+        out.write(pid >> 8);
+        out.write(pid & 0xFF);
+        out.write((adaptationBytes > 0 ? 0x30 : 0x10) | (counter & 0x0F));
+        if (adaptationBytes > 0) {
+            out.write(adaptationBytes - 1);
+            for (int ind = 1; ind < adaptationBytes; ind++) {
+                out.write(0xFF);
+            }
+        }
+        out.write(data, offset, 184 - adaptationBytes);
+    }
+
+    /** MDPM with the date and time entries, followed by other entries */
+    private static byte[] mdpm(int offset, byte timeZone, int entriesCount) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write(new byte[offset]);
+        out.write("MDPM".getBytes(StandardCharsets.US_ASCII));
+        out.write(entriesCount);
+        for (int entry = 0; entry < entriesCount - 2; entry++) {
+            out.write(new byte[]{0x70, 0, 0, 0, 0});
+        }
+        out.write(new byte[]{
+                0x18, timeZone, 0x20, 0x18, 0x08,
+                0x19, 0x15, 0x13, 0x45, 0x59});
+        out.write(new byte[1000]);
+        return out.toByteArray();
+    }
+
+    private Path write(String name, byte[] bytes) throws IOException {
+        Files.createDirectories(dir);
+        Path path = dir.resolve(name);
+        Files.write(path, bytes);
+        return path;
+    }
+
+    private static byte[] fullBoxTime(int version, long time) {
+        long seconds = time == 0 ? 0 : time / 1000 + ISO_MEDIA_EPOCH_SECONDS;
+        ByteBuffer buffer = ByteBuffer.allocate(version == 1 ? 32 : 20);
+        buffer.putInt(version << 24);
+        if (version == 1) {
+            buffer.putLong(seconds).putLong(seconds);
+        } else {
+            buffer.putInt((int) seconds).putInt((int) seconds);
+        }
+        return buffer.array();
+    }
+
+    private static byte[] box(String type, byte[]... content) {
+        byte[] data = concat(content);
+        return ByteBuffer.allocate(8 + data.length).putInt(8 + data.length)
+                .put(type.getBytes(StandardCharsets.US_ASCII)).put(data).array();
+    }
+
+    /** A box with 64 bit size */
+    private static byte[] largeBox(String type, byte[] data) {
+        return ByteBuffer.allocate(16 + data.length).putInt(1).put(type.getBytes(StandardCharsets.US_ASCII))
+                .putLong(16 + data.length).put(data).array();
+    }
+
+    private static byte[] concat(byte[]... arrays) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (byte[] array : arrays) {
+            out.write(array, 0, array.length);
+        }
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,69 @@
+package com.yurivolkov.mediatimelinesorter;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+/*
+ * Copyright (c) 2017 yvolk (Yuri Volkov), http://yurivolkov.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+public class ViewBuilderTest {
+    private final long baseTime = System.currentTimeMillis() / 1000 * 1000;
+
+    @Test
+    public void viewIsBuiltAndRebuilt() throws IOException {
+        Path dir = Paths.get("target/test-classes/test-view");
+        TestFiles.deleteRecursively(dir);
+        Path root = dir.resolve("trip");
+        Path view = dir.resolve("view");
+        addFile(root, "yp0038.jpg", 0);
+        addFile(root, "yp0039.mp4", -200);
+        addFile(root, "yc019.jpg", -500);
+
+        Main.main(new String[]{root.toString(), "--view=" + view});
+        assertEquals("Originals are not touched", "[yc019.jpg, yp0038.jpg, yp0039.mp4]", TestFiles.listNames(root).toString());
+        assertEquals(baseTime - 200 * 1000, Files.getLastModifiedTime(root.resolve("yp0039.mp4")).toMillis());
+        assertEquals("[1-yc019.jpg, 2-yp0038.jpg, 3-yp0039.mp4]", TestFiles.listNames(view).toString());
+        assertTrue(Files.isSameFile(root.resolve("yp0038.jpg"), view.resolve("2-yp0038.jpg")));
+
+        addFile(root, "yc018.jpg", -600);
+        Main.main(new String[]{root.toString(), "--view=" + view, "--compact"});
+        assertEquals("[1-yc018.jpg, 2-yc019.jpg, 3-yp0038.jpg, 4-yp0039.mp4]", TestFiles.listNames(view).toString());
+        assertTrue(Files.isSameFile(root.resolve("yc019.jpg"), view.resolve("2-yc019.jpg")));
+    }
+
+    @Test
+    public void otherDirectoryIsNotReplaced() throws IOException {
+        Path dir = Paths.get("target/test-classes/test-view-other");
+        TestFiles.deleteRecursively(dir);
+        Path root = dir.resolve("trip");
+        Path other = dir.resolve("other");
+        addFile(root, "yp0038.jpg", 0);
+        addFile(other, "notes.txt", 0);
+
+        Main.main(new String[]{root.toString(), "--view=" + other});
+        assertEquals("[notes.txt]", TestFiles.listNames(other).toString());
+        assertEquals("[yp0038.jpg]", TestFiles.listNames(root).toString());
+    }
+
+    private void addFile(Path dir, String fileName, int seconds) throws IOException {
+        TestFiles.addFile(dir, fileName, baseTime + seconds * 1000);
+    }
+}